@@ -0,0 +1,50 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import service.AnalyticsReport;
+import service.AnalyticsService;
+import storage.DataStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Сводный отчёт по всем пользователям; масштабируется числом ядер (ForkJoinPool.commonPool)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyticsBenchmark {
+
+    @Param({"100", "2000"})
+    int users;
+
+    @Param({"1000"})
+    int operations;
+
+    private Path dir;
+    private DataStore store;
+    private AnalyticsService analytics;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("finapp-bench");
+        store = Fixtures.newStore(dir);
+        for (int i = 0; i < users; i++) Fixtures.user(store, "user" + i, operations, i);
+        analytics = new AnalyticsService(store);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        Fixtures.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public AnalyticsReport fullReport() {
+        return analytics.report();
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import model.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import storage.DataStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DataStoreBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int operations;
+
+    private Path dir;
+    private DataStore store;
+    private User user;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("finapp-bench");
+        store = Fixtures.newStore(dir);
+        user = Fixtures.user(store, "bench", operations, 42);
+        store.save();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        Fixtures.deleteRecursively(dir);
+    }
+
+    // Только оглавление снимка и журнал
+    @Benchmark
+    public void load(Blackhole bh) {
+        DataStore loaded = Fixtures.readStore(dir);
+        loaded.load();
+        bh.consume(loaded);
+    }
+
+    // Оглавление плюс чтение одного пользователя
+    @Benchmark
+    public void loadUser(Blackhole bh) {
+        DataStore loaded = Fixtures.readStore(dir);
+        loaded.load();
+        bh.consume(loaded.getUser("bench"));
+    }
+
+    // Переписывается часть с изменённым пользователем
+    @Benchmark
+    public void save() {
+        store.markChanged(user);
+        store.save();
+    }
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import exceptions.NotFoundException;
+import exceptions.ValidationException;
+import model.*;
+import org.openjdk.jmh.annotations.*;
+import service.FinanceService;
+import storage.DataStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FinanceServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int operations;
+
+    private Path dir;
+    private DataStore store;
+    private FinanceService service;
+    private User user;
+    private YearMonth month;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("finapp-bench");
+        store = Fixtures.newStore(dir);
+        service = new FinanceService(store);
+        user = Fixtures.user(store, "bench", operations, 42);
+        Fixtures.user(store, "recipient", 0, 7);
+        store.save();
+        month = Fixtures.FIRST_MONTH.plusMonths(Fixtures.MONTHS / 2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        Fixtures.deleteRecursively(dir);
+    }
+
+    // Включает проверку лимита: у каждой категории есть бюджет на этот месяц
+    @Benchmark
+    public void addOperation() throws ValidationException {
+        service.addOperation(user, Operation.ofMinor(user.getSubTypes(), OperationType.EXPENSE,
+                Fixtures.category(counter++), 100, "bench", month.atDay(10)));
+    }
+
+    @Benchmark
+    public Map<String, Double> getActualDifference() {
+        return service.getActualDifference(user, month, OperationType.EXPENSE);
+    }
+
+    @Benchmark
+    public double getBalance() {
+        return user.getBalance();
+    }
+
+    @Benchmark
+    public void transfer() throws NotFoundException, ValidationException {
+        service.transfer(user, "recipient", 0.01);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void exportFullReport() throws ValidationException {
+        service.exportFullReport(user, dir.resolve("report.csv").toString());
+    }
+}
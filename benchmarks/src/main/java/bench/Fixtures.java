@@ -0,0 +1,76 @@
+package bench;
+
+import exceptions.StorageException;
+import model.*;
+import storage.DataStore;
+import storage.DurabilityMode;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+// Синтетические данные для бенчмарков
+final class Fixtures {
+    static final int CATEGORIES = 20;
+    static final YearMonth FIRST_MONTH = YearMonth.of(2020, 1);
+    static final int MONTHS = 60;
+
+    private Fixtures() {}
+
+    // Пустое хранилище с настройками сервера: запись ждёт сброса журнала на диск,
+    // одновременные записи сбрасываются одной пачкой
+    static DataStore newStore(Path dir) {
+        DataStore store = new DataStore(dir, DurabilityMode.GROUP_COMMIT, 2, 512);
+        store.load();
+        return store;
+    }
+
+    // Хранилище только для чтения: закрывать его не нужно
+    static DataStore readStore(Path dir) {
+        return new DataStore(dir, DurabilityMode.SYNC, 0, 1);
+    }
+
+    static String category(int i) {
+        return "категория " + (i % CATEGORIES);
+    }
+
+    // Пользователь с operations операциями за MONTHS месяцев и бюджетом на каждую категорию и месяц.
+    // Данные кладутся прямо в модель, без журнала
+    static User user(DataStore store, String login, int operations, long seed) {
+        User u;
+        try {
+            u = store.addUser(new User(login, "pass", store.getSubTypes()));
+        } catch (StorageException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        SubTypeDictionary subTypes = u.getSubTypes();
+        SplittableRandom rnd = new SplittableRandom(seed);
+
+        for (int m = 0; m < MONTHS; m++) {
+            YearMonth month = FIRST_MONTH.plusMonths(m);
+            for (int c = 0; c < CATEGORIES; c++) {
+                u.addBudget(BudgetItem.ofMinor(subTypes, OperationType.EXPENSE, category(c), month, 1_000_000_000_000L));
+            }
+            u.addOperation(Operation.ofMinor(subTypes, OperationType.INCOME, "зарплата", 10_000_000_000L, "ЗП",
+                    month.atDay(1)));
+        }
+
+        for (int i = 0; i < operations; i++) {
+            LocalDate date = FIRST_MONTH.atDay(1).plusDays(rnd.nextInt(MONTHS * 30));
+            u.addOperation(Operation.ofMinor(subTypes, OperationType.EXPENSE, category(rnd.nextInt(CATEGORIES)),
+                    1 + rnd.nextInt(100_000), "покупка " + i, date));
+        }
+        return u;
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
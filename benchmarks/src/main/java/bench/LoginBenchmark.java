@@ -0,0 +1,77 @@
+package bench;
+
+import exceptions.AuthException;
+import model.User;
+import org.openjdk.jmh.annotations.*;
+import service.FinanceService;
+import service.PasswordHasher;
+import storage.DataStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Поток входов из нескольких потоков: по нему подбирается число итераций PBKDF2.
+// verify — полная проверка хэша (первый вход), login — вход через сервис с кэшем проверок.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LoginBenchmark {
+    private static final int USERS = 256;
+
+    @Param({"10000", "120000", "600000"})
+    int iterations;
+
+    private Path dir;
+    private DataStore store;
+    private PasswordHasher hasher;
+    private FinanceService service;
+    private String[] hashes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("finapp-bench");
+        store = Fixtures.newStore(dir);
+        hasher = new PasswordHasher(iterations);
+        service = new FinanceService(store, hasher);
+        hashes = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            User u = service.register("user" + i, "pass" + i);
+            hashes[i] = u.getPasswordHash();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        Fixtures.deleteRecursively(dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        SplittableRandom rnd;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            rnd = new SplittableRandom(Thread.currentThread().threadId());
+        }
+    }
+
+    @Benchmark
+    public boolean verify(Session s) {
+        int i = s.rnd.nextInt(USERS);
+        return hasher.verify("pass" + i, hashes[i]);
+    }
+
+    @Benchmark
+    public User login(Session s) throws AuthException {
+        int i = s.rnd.nextInt(USERS);
+        return service.login("user" + i, "pass" + i);
+    }
+}
@@ -0,0 +1,84 @@
+package bench;
+
+import exceptions.ValidationException;
+import model.*;
+import org.openjdk.jmh.annotations.*;
+import service.FinanceService;
+import storage.DataStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+// Поиск операций по словам с отбором по периоду и сумме.
+// Индекс строится в setUp первым поиском; замеряются поиски по готовому индексу
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"100000", "1000000"})
+    int operations;
+
+    private Path dir;
+    private DataStore store;
+    private FinanceService service;
+    private User user;
+
+    // редкое слово: зарплата раз в месяц
+    private final OperationQuery rare = OperationQuery.text("зарп");
+    // частое слово, квартал и нижняя граница суммы
+    private final OperationQuery quarter = new OperationQuery("категория", LocalDate.of(2022, 7, 1),
+            LocalDate.of(2022, 9, 30), 50_000L, null, EnumSet.of(OperationType.EXPENSE));
+    // слово и число: числа в названиях не индексируются и проверяются по строкам
+    private final OperationQuery withNumber = OperationQuery.text("покупка 12345");
+    // без слов: отбор по сумме за всю историю
+    private final OperationQuery amountOnly = new OperationQuery("", null, null, 99_000L, 99_100L,
+            EnumSet.allOf(OperationType.class));
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ValidationException {
+        dir = Files.createTempDirectory("finapp-bench");
+        store = Fixtures.newStore(dir);
+        user = Fixtures.user(store, "user", operations, 1);
+        service = new FinanceService(store);
+        service.searchOperations(user, rare, 0, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        Fixtures.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public OperationPage rareWord() throws ValidationException {
+        return service.searchOperations(user, rare, 0, 20);
+    }
+
+    @Benchmark
+    public OperationPage wordPeriodAmount() throws ValidationException {
+        return service.searchOperations(user, quarter, 0, 20);
+    }
+
+    @Benchmark
+    public OperationPage wordPeriodAmountDeepPage() throws ValidationException {
+        return service.searchOperations(user, quarter, 1000, 20);
+    }
+
+    @Benchmark
+    public OperationPage wordAndNumber() throws ValidationException {
+        return service.searchOperations(user, withNumber, 0, 20);
+    }
+
+    @Benchmark
+    public OperationPage amountRangeOnly() throws ValidationException {
+        return service.searchOperations(user, amountOnly, 0, 20);
+    }
+}
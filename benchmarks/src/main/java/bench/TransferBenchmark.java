@@ -0,0 +1,67 @@
+package bench;
+
+import exceptions.NotFoundException;
+import exceptions.ValidationException;
+import model.User;
+import org.openjdk.jmh.annotations.*;
+import service.FinanceService;
+import storage.DataStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Переводы из нескольких потоков между случайными парами пользователей.
+// При users=2 все потоки спорят за одни и те же блокировки.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class TransferBenchmark {
+
+    @Param({"2", "64", "1000"})
+    int users;
+
+    private Path dir;
+    private DataStore store;
+    private User[] accounts;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("finapp-bench");
+        store = Fixtures.newStore(dir);
+        accounts = new User[users];
+        for (int i = 0; i < users; i++) accounts[i] = Fixtures.user(store, "user" + i, 0, i);
+        store.save();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        Fixtures.deleteRecursively(dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+        FinanceService service;
+        SplittableRandom rnd;
+
+        @Setup(Level.Trial)
+        public void setUp(TransferBenchmark b) {
+            service = new FinanceService(b.store);
+            rnd = new SplittableRandom(Thread.currentThread().threadId());
+        }
+    }
+
+    @Benchmark
+    public void transfer(Session s) throws NotFoundException, ValidationException {
+        User from = accounts[s.rnd.nextInt(users)];
+        User to = accounts[s.rnd.nextInt(users)];
+        s.service.transfer(from, to.getLogin(), 0.01);
+    }
+}
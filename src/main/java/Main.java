@@ -1,7 +1,61 @@
+import api.ApiServer;
+import api.LoadTestClient;
+import metrics.Metrics;
+import service.FinanceService;
+import service.RecurringScheduler;
+import storage.DataStore;
+import storage.DurabilityMode;
 import ui.*;
 
+import java.util.Arrays;
+
+// Без аргументов — консольный интерфейс.
+// --server [порт] — HTTP/JSON API (ApiServer), по умолчанию порт 8080.
+// --load-test [параметры] — нагрузочный клиент для запущенного сервера (LoadTestClient).
+//
+// Метрики доступны по JMX (домен finapp). Сводка печатается раз в finapp.metrics.dump.seconds секунд:
+// сервером по умолчанию раз в минуту, консольным интерфейсом — только если свойство задано.
+//
+// Регулярные записи проводятся при запуске; сервер дальше проверяет их раз в
+// finapp.recurring.minutes минут (по умолчанию 60).
+//
+// Режим журнала задают свойства finapp.journal.mode, finapp.journal.flush.millis и finapp.journal.batch
+// (см. DataStore.fromProperties): у сервера по умолчанию GROUP_COMMIT, у консольного интерфейса — SYNC.
 public class Main {
-    public static void main(String[] args) {
-        new ConsoleUI().run();
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--load-test")) {
+            LoadTestClient.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        boolean server = args.length > 0 && args[0].equals("--server");
+        Metrics.shared().registerJmx();
+        long dumpSeconds = Long.getLong("finapp.metrics.dump.seconds", server ? 60 : 0);
+        if (dumpSeconds > 0) Metrics.shared().startDump(dumpSeconds, server ? System.out : System.err);
+
+        if (server) {
+            runServer(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+        } else {
+            new ConsoleUI().run();
+        }
+    }
+
+    // По умолчанию журнал сбрасывается общими пачками: запросы многих клиентов не ждут каждый своего fsync
+    private static void runServer(int port) throws Exception {
+        DataStore store = DataStore.fromProperties(DurabilityMode.GROUP_COMMIT);
+        store.load();
+        FinanceService service = new FinanceService(store);
+        ApiServer server = new ApiServer(service, port);
+        RecurringScheduler recurring = new RecurringScheduler(service);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            recurring.close();
+            server.stop(2);
+            store.close();
+            System.out.print(Metrics.shared().getReport());
+        }));
+        server.start();
+        recurring.start(Long.getLong("finapp.recurring.minutes", 60));
+        System.out.println("Сервер запущен на порту " + server.getPort());
     }
 }
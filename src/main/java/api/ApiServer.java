@@ -0,0 +1,532 @@
+package api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import exceptions.AuthException;
+import exceptions.NotFoundException;
+import exceptions.StorageException;
+import exceptions.ValidationException;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import model.*;
+import service.BudgetAlert;
+import service.FinanceService;
+import service.ReportFilter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// HTTP/JSON API поверх FinanceService на встроенном HttpServer JDK.
+// Каждый запрос обрабатывается в своём виртуальном потоке: ожидание блокировок
+// пользователя и записи журнала не занимает потоков ОС.
+//
+// Вход и регистрация выдают токен, остальные запросы передают его в заголовке
+// "Authorization: Bearer <токен>". Суммы в ответах — числа с двумя знаками после точки.
+// Уведомления о бюджетах, вызванные запросом, возвращаются в его ответе (поле alerts).
+public final class ApiServer {
+    private static final int MAX_BODY = 64 * 1024;
+    private static final int DEFAULT_PAGE = 50;
+    private static final int MAX_PAGE = 500;
+
+    @FunctionalInterface
+    private interface Route {
+        void handle(Call c) throws Exception;
+    }
+
+    private final FinanceService service;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SessionRegistry sessions;
+    // уведомления о бюджетах срабатывают в потоке запроса и собираются в его ответ
+    private final ThreadLocal<List<BudgetAlert>> alerts = new ThreadLocal<>();
+
+    public ApiServer(FinanceService service, int port) throws IOException {
+        this.service = service;
+        this.sessions = new SessionRegistry(Long.getLong("finapp.session.ttl.minutes", 30) * 60_000);
+        // По умолчанию сервер держит открытыми лишь 200 простаивающих соединений и закрывает остальные,
+        // а клиенты с пулом соединений получают ошибку на закрытом. Читается при первом создании сервера.
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null)
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "20000");
+        this.server = HttpServer.create(new InetSocketAddress(port), Integer.getInteger("finapp.http.backlog", 1024));
+        server.setExecutor(executor);
+
+        service.addAlertListener(a -> {
+            List<BudgetAlert> collected = alerts.get();
+            if (collected != null) collected.add(a);
+        });
+
+        route("/api/register", false, Map.of("POST", this::register));
+        route("/api/login", false, Map.of("POST", this::login));
+        route("/api/logout", true, Map.of("POST", this::logout));
+        route("/api/balance", true, Map.of("GET", this::balance));
+        route("/api/operations", true, Map.of("GET", this::listOperations, "POST", this::addOperation));
+        route("/api/operations/search", true, Map.of("GET", this::searchOperations));
+        route("/api/budgets", true, Map.of("GET", this::listBudgets, "POST", this::addBudget, "PUT", this::editBudget));
+        route("/api/actuals", true, Map.of("GET", this::actuals));
+        route("/api/months", true, Map.of("GET", this::months));
+        route("/api/recurring", true, Map.of("GET", this::listRecurring, "POST", this::addRecurring,
+                "DELETE", this::removeRecurring));
+        route("/api/transfer", true, Map.of("POST", this::transfer));
+        route("/api/export", true, Map.of("GET", this::export));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Ждёт завершения текущих запросов не дольше delaySeconds
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() { return server.getAddress().getPort(); }
+
+    // ==========================
+    //        АВТОРИЗАЦИЯ
+    // ==========================
+    private void register(Call c) throws Exception {
+        User u = service.register(c.field("login"), c.field("password"));
+        c.reply(201, new Json.Writer().beginObject()
+                .field("token", sessions.open(u))
+                .field("login", u.getLogin())
+                .endObject());
+    }
+
+    private void login(Call c) throws Exception {
+        User u = service.login(c.field("login"), c.field("password"));
+        c.reply(200, new Json.Writer().beginObject()
+                .field("token", sessions.open(u))
+                .field("login", u.getLogin())
+                .endObject());
+    }
+
+    private void logout(Call c) throws IOException {
+        sessions.close(c.token);
+        c.replyEmpty();
+    }
+
+    // ==========================
+    //          КОШЕЛЁК
+    // ==========================
+    private void balance(Call c) throws IOException {
+        c.reply(200, new Json.Writer().beginObject()
+                .field("login", c.user.getLogin())
+                .moneyField("balance", c.user.getBalanceMinor())
+                .endObject());
+    }
+
+    private void transfer(Call c) throws Exception {
+        String id = c.optionalField("id");
+        service.transferMinor(id == null ? UUID.randomUUID().toString() : id, c.user, c.field("to"),
+                c.amount("amount"));
+        c.replyWithAlerts(200);
+    }
+
+    // ==========================
+    //          ОПЕРАЦИИ
+    // ==========================
+    private void listOperations(Call c) throws Exception {
+        LocalDate from = c.date(c.query("from"));
+        LocalDate to = c.date(c.query("to"));
+        int offset = c.intQuery("offset", 0, Integer.MAX_VALUE, 0);
+        int limit = c.intQuery("limit", 1, MAX_PAGE, DEFAULT_PAGE);
+
+        Json.Writer w = new Json.Writer().beginObject()
+                .field("total", service.countOperations(c.user, from, to))
+                .field("offset", offset);
+        c.reply(200, operations(w, service.getOperations(c.user, from, to, offset, limit)).endObject());
+    }
+
+    // Поиск: q — слова (начала слов названия или подтипа), from, to, min, max, type, offset, limit
+    private void searchOperations(Call c) throws Exception {
+        String type = c.query("type");
+        String min = c.query("min");
+        String max = c.query("max");
+        OperationQuery query = new OperationQuery(c.query("q"), c.date(c.query("from")), c.date(c.query("to")),
+                min == null ? null : Money.parseMinor(min), max == null ? null : Money.parseMinor(max),
+                type == null ? EnumSet.allOf(OperationType.class) : EnumSet.of(c.type(type)));
+        int offset = c.intQuery("offset", 0, Integer.MAX_VALUE, 0);
+        int limit = c.intQuery("limit", 1, MAX_PAGE, DEFAULT_PAGE);
+
+        OperationPage page = service.searchOperations(c.user, query, offset, limit);
+        Json.Writer w = new Json.Writer().beginObject()
+                .field("total", page.total())
+                .field("offset", offset);
+        c.reply(200, operations(w, page.items()).endObject());
+    }
+
+    // Поле items со списком операций
+    private static Json.Writer operations(Json.Writer w, List<Operation> ops) {
+        w.name("items").beginArray();
+        for (Operation o : ops) {
+            w.beginObject()
+                    .field("date", o.getDate().toString())
+                    .field("type", o.getType().name())
+                    .field("subType", o.getSubType())
+                    .moneyField("amount", o.getAmountMinor())
+                    .field("name", o.getName())
+                    .endObject();
+        }
+        return w.endArray();
+    }
+
+    private void addOperation(Call c) throws Exception {
+        String date = c.optionalField("date");
+        Operation op = Operation.ofMinor(c.user.getSubTypes(),
+                c.type(c.field("type")),
+                c.field("subType"),
+                c.amount("amount"),
+                c.field("name"),
+                date == null ? LocalDate.now() : c.date(date));
+        service.addOperation(c.user, op);
+        c.replyWithAlerts(201);
+    }
+
+    // ==========================
+    //           БЮДЖЕТ
+    // ==========================
+    private void listBudgets(Call c) throws IOException {
+        Json.Writer w = new Json.Writer().beginObject().name("items").beginArray();
+        for (BudgetItem b : service.getBudgets(c.user)) {
+            w.beginObject()
+                    .field("type", b.getType().name())
+                    .field("subType", b.getSubType())
+                    .field("month", b.getMonth().toString())
+                    .moneyField("limit", b.getLimitMinor())
+                    .endObject();
+        }
+        c.reply(200, w.endArray().endObject());
+    }
+
+    private void addBudget(Call c) throws Exception {
+        service.addBudgetMinor(c.user, c.type(c.field("type")), c.field("subType"),
+                c.month(c.field("month")), c.amount("limit"));
+        c.replyWithAlerts(201);
+    }
+
+    private void editBudget(Call c) throws Exception {
+        service.editBudgetMinor(c.user, c.field("subType"), c.month(c.field("month")), c.amount("limit"));
+        c.replyWithAlerts(200);
+    }
+
+    // Лимит, факт и остаток по каждому бюджету месяца, итоги доходов и расходов
+    private void actuals(Call c) throws Exception {
+        String month = c.query("month");
+        YearMonth ym = month == null ? YearMonth.now() : c.month(month);
+        MonthlyRollup rollup = service.getMonthlyRollup(c.user, ym);
+        List<BudgetItem> budgets = service.getBudgets(c.user, ym);
+
+        Json.Writer w = new Json.Writer().beginObject().field("month", ym.toString());
+        long income = actualsForType(w.name("income"), budgets, rollup, OperationType.INCOME);
+        long expense = actualsForType(w.name("expense"), budgets, rollup, OperationType.EXPENSE);
+        w.moneyField("net", income - expense);
+        c.reply(200, w.endObject());
+    }
+
+    private static long actualsForType(Json.Writer w, List<BudgetItem> budgets, MonthlyRollup rollup, OperationType type) {
+        long total = 0;
+        w.beginObject().name("items").beginArray();
+        for (BudgetItem b : budgets) {
+            if (b.getType() != type) continue;
+
+            long fact = rollup.getTotalMinor(type, b.getSubTypeId());
+            total += fact;
+            w.beginObject()
+                    .field("subType", b.getSubType())
+                    .moneyField("limit", b.getLimitMinor())
+                    .moneyField("fact", fact)
+                    .moneyField("remainder", b.getLimitMinor() - fact)
+                    .endObject();
+        }
+        w.endArray().moneyField("total", total).endObject();
+        return total;
+    }
+
+    // Доходы и расходы по месяцам за период
+    private void months(Call c) throws Exception {
+        Json.Writer w = new Json.Writer().beginObject().name("items").beginArray();
+        for (MonthlyRollup r : service.getMonthlyRollups(c.user, c.date(c.query("from")), c.date(c.query("to")))) {
+            w.beginObject()
+                    .field("month", r.getMonth().toString())
+                    .moneyField("income", r.getIncomeMinor())
+                    .moneyField("expense", r.getExpenseMinor())
+                    .moneyField("net", r.getNetMinor())
+                    .field("operations", r.getOperationCount())
+                    .endObject();
+        }
+        c.reply(200, w.endArray().endObject());
+    }
+
+    // ==========================
+    //     РЕГУЛЯРНЫЕ ЗАПИСИ
+    // ==========================
+    private void listRecurring(Call c) throws IOException {
+        Json.Writer w = new Json.Writer().beginObject().name("items").beginArray();
+        for (RecurringRule r : service.getRecurringRules(c.user)) {
+            w.beginObject()
+                    .field("id", r.getId())
+                    .field("kind", r.getKind().name())
+                    .field("period", r.getPeriod().name())
+                    .field("type", r.getType().name())
+                    .field("subType", r.getSubType())
+                    .moneyField("amount", r.getAmountMinor())
+                    .field("name", r.getName())
+                    .field("nextDue", r.getNextDue().toString())
+                    .endObject();
+        }
+        c.reply(200, w.endArray().endObject());
+    }
+
+    // Операция: kind=OPERATION, type, subType, amount, name, period (WEEKLY/MONTHLY), start (по умолчанию сегодня).
+    // Бюджет: kind=BUDGET, type, subType, limit, month (по умолчанию текущий).
+    // Наступившие повторения проводятся сразу; их число — в поле posted
+    private void addRecurring(Call c) throws Exception {
+        OperationType type = c.type(c.field("type"));
+        RecurringRule r;
+        if (c.field("kind").equalsIgnoreCase(RecurringRule.Kind.BUDGET.name())) {
+            String month = c.optionalField("month");
+            r = service.addRecurringBudgetMinor(c.user, type, c.field("subType"), c.amount("limit"),
+                    month == null ? YearMonth.now() : c.month(month));
+        } else if (c.field("kind").equalsIgnoreCase(RecurringRule.Kind.OPERATION.name())) {
+            String start = c.optionalField("start");
+            r = service.addRecurringOperationMinor(c.user, type, c.field("subType"), c.amount("amount"),
+                    c.field("name"), c.period(c.field("period")), start == null ? LocalDate.now() : c.date(start));
+        } else {
+            throw new ValidationException("Поле kind должно быть OPERATION или BUDGET");
+        }
+
+        int posted = service.postDueRecurring(c.user, LocalDate.now());
+        c.reply(201, c.withAlerts(new Json.Writer().beginObject()
+                .field("id", r.getId())
+                .field("posted", posted)).endObject());
+    }
+
+    private void removeRecurring(Call c) throws Exception {
+        String id = c.query("id");
+        if (id == null) throw new ValidationException("Не задан параметр id");
+        service.removeRecurringRule(c.user, id);
+        c.replyEmpty();
+    }
+
+    // ==========================
+    //           ОТЧЁТ
+    // ==========================
+    // CSV того же формата, что и выгрузка в файл, передаётся потоком
+    private void export(Call c) throws Exception {
+        String type = c.query("type");
+        ReportFilter filter = new ReportFilter(c.date(c.query("from")), c.date(c.query("to")),
+                type == null ? EnumSet.allOf(OperationType.class) : EnumSet.of(c.type(type)));
+
+        c.exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=utf-8");
+        c.exchange.sendResponseHeaders(200, 0);
+        c.sent = true;
+        service.exportFullReport(c.user, c.exchange.getResponseBody(), filter);
+    }
+
+    // ==========================
+    //       РАЗБОР ЗАПРОСОВ
+    // ==========================
+    private void route(String path, boolean authorized, Map<String, Route> methods) {
+        LatencyHistogram time = Metrics.shared().histogram("http " + path);
+        server.createContext(path, ex -> {
+            long start = System.nanoTime();
+            dispatch(ex, path, authorized, methods);
+            time.recordSince(start);
+        });
+    }
+
+    private void dispatch(HttpExchange ex, String path, boolean authorized, Map<String, Route> methods) {
+        Call c = new Call(ex);
+        try {
+            if (!ex.getRequestURI().getPath().equals(path)) {
+                c.error(404, "Не найдено");
+                return;
+            }
+            Route route = methods.get(ex.getRequestMethod());
+            if (route == null) {
+                ex.getResponseHeaders().set("Allow", String.join(", ", new TreeSet<>(methods.keySet())));
+                c.error(405, "Метод не поддерживается");
+                return;
+            }
+            if (authorized) {
+                c.token = bearerToken(ex);
+                c.user = sessions.get(c.token);
+                if (c.user == null) throw new AuthException("Требуется вход");
+            }
+
+            alerts.set(c.alerts);
+            route.handle(c);
+        } catch (ValidationException | IllegalArgumentException e) {
+            c.error(400, e.getMessage());
+        } catch (ArithmeticException e) {
+            c.error(400, "Слишком большое число");
+        } catch (DateTimeParseException e) {
+            c.error(400, "Некорректная дата: " + e.getParsedString());
+        } catch (AuthException e) {
+            c.error(401, e.getMessage());
+        } catch (NotFoundException e) {
+            c.error(404, e.getMessage());
+        } catch (StorageException e) {
+            c.error(503, e.getMessage());
+        } catch (IOException e) {
+            // клиент закрыл соединение — отвечать некому
+        } catch (Exception e) {
+            System.err.println("Ошибка обработки " + ex.getRequestMethod() + " " + path + ": " + e);
+            c.error(500, "Внутренняя ошибка сервера");
+        } finally {
+            alerts.remove();
+            ex.close();
+        }
+    }
+
+    private static String bearerToken(HttpExchange ex) {
+        String header = ex.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) return null;
+        return header.substring(7).trim();
+    }
+
+    // Один запрос: параметры строки запроса, поля тела, пользователь сессии
+    private final class Call {
+        final HttpExchange exchange;
+        final List<BudgetAlert> alerts = new ArrayList<>();
+        String token;
+        User user;
+        boolean sent;
+        private Map<String, String> query;
+        private Map<String, String> body;
+
+        Call(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        String query(String name) {
+            if (query == null) query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String v = query.get(name);
+            return v == null || v.isEmpty() ? null : v;
+        }
+
+        int intQuery(String name, int min, int max, int defaultValue) throws ValidationException {
+            String v = query(name);
+            if (v == null) return defaultValue;
+            try {
+                return Math.clamp(Long.parseLong(v), min, max);
+            } catch (NumberFormatException e) {
+                throw new ValidationException("Параметр " + name + " должен быть целым числом");
+            }
+        }
+
+        String field(String name) throws ValidationException, IOException {
+            String v = optionalField(name);
+            if (v == null || v.isBlank()) throw new ValidationException("Не задано поле " + name);
+            return v;
+        }
+
+        String optionalField(String name) throws ValidationException, IOException {
+            if (body == null) body = Json.parseObject(readBody());
+            return body.get(name);
+        }
+
+        long amount(String name) throws ValidationException, IOException {
+            return Money.parseMinor(field(name));
+        }
+
+        OperationType type(String text) throws ValidationException {
+            for (OperationType t : OperationType.values()) {
+                if (t.name().equalsIgnoreCase(text)) return t;
+            }
+            throw new ValidationException("Тип должен быть INCOME или EXPENSE");
+        }
+
+        RecurringRule.Period period(String text) throws ValidationException {
+            for (RecurringRule.Period p : RecurringRule.Period.values()) {
+                if (p.name().equalsIgnoreCase(text)) return p;
+            }
+            throw new ValidationException("Период должен быть WEEKLY или MONTHLY");
+        }
+
+        LocalDate date(String text) {
+            return text == null ? null : LocalDate.parse(text);
+        }
+
+        YearMonth month(String text) {
+            return YearMonth.parse(text);
+        }
+
+        void replyWithAlerts(int status) throws IOException {
+            reply(status, withAlerts(new Json.Writer().beginObject()).endObject());
+        }
+
+        // Дописывает в открытый объект w баланс и уведомления, вызванные запросом
+        Json.Writer withAlerts(Json.Writer w) {
+            w.moneyField("balance", user.getBalanceMinor()).name("alerts").beginArray();
+            for (BudgetAlert a : alerts) {
+                w.beginObject()
+                        .field("level", a.getLevel().name())
+                        .field("subType", a.getSubType())
+                        .field("month", a.getMonth().toString())
+                        .moneyField("limit", a.getLimitMinor())
+                        .moneyField("spent", a.getSpentMinor())
+                        .endObject();
+            }
+            return w.endArray();
+        }
+
+        void reply(int status, Json.Writer json) throws IOException {
+            byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            sent = true;
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        void replyEmpty() throws IOException {
+            exchange.sendResponseHeaders(204, -1);
+            sent = true;
+        }
+
+        // Ответ с ошибкой; если ответ уже начат, соединение просто закрывается
+        void error(int status, String message) {
+            Metrics.shared().counter("http.errors." + status).increment();
+            if (sent) return;
+            try {
+                reply(status, new Json.Writer().beginObject().field("error", message).endObject());
+            } catch (IOException ignored) {
+                // клиент уже отключился
+            }
+        }
+
+        private String readBody() throws IOException, ValidationException {
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] bytes = in.readNBytes(MAX_BODY + 1);
+                if (bytes.length > MAX_BODY) throw new ValidationException("Слишком большой запрос");
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+}
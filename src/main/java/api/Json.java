@@ -0,0 +1,226 @@
+package api;
+
+import exceptions.ValidationException;
+import model.Money;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Минимальный JSON без внешних библиотек.
+// Запросы API — плоские объекты: значения (строки, числа, true/false/null) читаются как текст.
+// Ответы собираются Writer'ом прямо в StringBuilder.
+final class Json {
+
+    private Json() {}
+
+    // ==========================
+    //           РАЗБОР
+    // ==========================
+    // {"login": "a", "amount": 12.5} -> {login=a, amount=12.5}; null-значения пропускаются
+    static Map<String, String> parseObject(String text) throws ValidationException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (text.isBlank()) return fields;
+
+        Parser p = new Parser(text);
+        p.expect('{');
+        if (!p.consume('}')) {
+            do {
+                String name = p.string();
+                p.expect(':');
+                String value = p.value();
+                if (value != null) fields.put(name, value);
+            } while (p.consume(','));
+            p.expect('}');
+        }
+        p.end();
+        return fields;
+    }
+
+    private static final class Parser {
+        private final String s;
+        private int i;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        String value() throws ValidationException {
+            skipSpace();
+            if (i >= s.length()) throw error();
+            char c = s.charAt(i);
+            if (c == '"') return string();
+
+            int start = i;
+            while (i < s.length() && "{}[],: \t\r\n\"".indexOf(s.charAt(i)) < 0) i++;
+            String token = s.substring(start, i);
+            if (token.equals("null")) return null;
+            if (token.isEmpty() || c == '{' || c == '[') throw error();
+            return token;
+        }
+
+        String string() throws ValidationException {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (i < s.length()) {
+                char c = s.charAt(i++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (i >= s.length()) break;
+                char e = s.charAt(i++);
+                switch (e) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case 'r' -> sb.append('\r');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (i + 4 > s.length()) throw error();
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error();
+                        }
+                        i += 4;
+                    }
+                    default -> sb.append(e);
+                }
+            }
+            throw error();
+        }
+
+        void expect(char c) throws ValidationException {
+            if (!consume(c)) throw error();
+        }
+
+        boolean consume(char c) {
+            skipSpace();
+            if (i < s.length() && s.charAt(i) == c) {
+                i++;
+                return true;
+            }
+            return false;
+        }
+
+        void end() throws ValidationException {
+            skipSpace();
+            if (i < s.length()) throw error();
+        }
+
+        private void skipSpace() {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        }
+
+        private ValidationException error() {
+            return new ValidationException("Некорректный JSON (позиция " + i + ")");
+        }
+    }
+
+    // ==========================
+    //           ЗАПИСЬ
+    // ==========================
+    // Запятые между элементами расставляются сами
+    static final class Writer {
+        private final StringBuilder sb = new StringBuilder(256);
+        // для каждого открытого объекта или массива: был ли уже элемент
+        private final Deque<Boolean> nonEmpty = new ArrayDeque<>();
+        private boolean afterName;
+
+        Writer beginObject() {
+            separate();
+            sb.append('{');
+            nonEmpty.push(false);
+            return this;
+        }
+
+        Writer endObject() {
+            nonEmpty.pop();
+            sb.append('}');
+            return this;
+        }
+
+        Writer beginArray() {
+            separate();
+            sb.append('[');
+            nonEmpty.push(false);
+            return this;
+        }
+
+        Writer endArray() {
+            nonEmpty.pop();
+            sb.append(']');
+            return this;
+        }
+
+        Writer name(String name) {
+            separate();
+            quote(name);
+            sb.append(':');
+            afterName = true;
+            return this;
+        }
+
+        Writer value(String v) {
+            separate();
+            if (v == null) sb.append("null");
+            else quote(v);
+            return this;
+        }
+
+        Writer value(long v) {
+            separate();
+            sb.append(v);
+            return this;
+        }
+
+        // Сумма в копейках числом с двумя знаками: 1234567 -> 12345.67
+        Writer money(long minor) {
+            separate();
+            Money.appendTo(sb, minor);
+            return this;
+        }
+
+        Writer field(String name, String v) { return name(name).value(v); }
+        Writer field(String name, long v) { return name(name).value(v); }
+        Writer moneyField(String name, long minor) { return name(name).money(minor); }
+
+        private void separate() {
+            if (afterName) {
+                afterName = false;
+                return;
+            }
+            if (nonEmpty.isEmpty()) return;
+            if (nonEmpty.peek()) sb.append(',');
+            else {
+                nonEmpty.pop();
+                nonEmpty.push(true);
+            }
+        }
+
+        private void quote(String s) {
+            sb.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                    }
+                }
+            }
+            sb.append('"');
+        }
+
+        @Override
+        public String toString() { return sb.toString(); }
+    }
+}
@@ -0,0 +1,162 @@
+package api;
+
+import exceptions.ValidationException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Нагрузочный клиент для ApiServer: clients пользователей в своих виртуальных потоках.
+// Каждый регистрируется, задаёт бюджет и выполняет requests запросов: операции,
+// просмотр операций и фактических данных, переводы соседу.
+// Печатает пропускную способность и задержки (медиана, 95-й и 99-й перцентили).
+//
+// Запуск: java Main --load-test [--url http://localhost:8080] [--clients 200] [--requests 100]
+public class LoadTestClient {
+
+    private final HttpClient http;
+    private final String url;
+    private final String run = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong errors = new AtomicLong();
+
+    public LoadTestClient(String url) {
+        this.url = url;
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:8080";
+        int clients = 200;
+        int requests = 100;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--url" -> url = args[i + 1];
+                case "--clients" -> clients = Integer.parseInt(args[i + 1]);
+                case "--requests" -> requests = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Неизвестный параметр " + args[i]);
+            }
+        }
+
+        new LoadTestClient(url).run(clients, requests);
+    }
+
+    public void run(int clients, int requests) throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            System.out.println("Регистрация " + clients + " пользователей...");
+            long start = System.nanoTime();
+            List<Future<String>> registered = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                String login = login(i);
+                registered.add(executor.submit(() -> register(login)));
+            }
+            String[] tokens = new String[clients];
+            for (int i = 0; i < clients; i++) tokens[i] = registered.get(i).get();
+            report("Регистрация", clients, System.nanoTime() - start, null);
+
+            System.out.println("Запросы: " + clients + " x " + requests + "...");
+            start = System.nanoTime();
+            List<Future<long[]>> sessions = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                sessions.add(executor.submit(() -> session(tokens[client], login((client + 1) % clients), requests)));
+            }
+            long[] latencies = new long[clients * requests];
+            int n = 0;
+            for (Future<long[]> f : sessions) {
+                long[] part = f.get();
+                System.arraycopy(part, 0, latencies, n, part.length);
+                n += part.length;
+            }
+            report("Запросы", n, System.nanoTime() - start, Arrays.copyOf(latencies, n));
+        }
+        System.out.println("Ошибок: " + errors.get());
+    }
+
+    private String login(int client) {
+        return "load-" + run + "-" + client;
+    }
+
+    private String register(String login) throws IOException, InterruptedException, ValidationException {
+        HttpResponse<String> r = send("POST", "/api/register", null,
+                "{\"login\":\"" + login + "\",\"password\":\"load\"}");
+        if (r.statusCode() != 201) throw new IOException("Регистрация " + login + ": " + r.body());
+
+        String token = Json.parseObject(r.body()).get("token");
+        send("POST", "/api/budgets", token,
+                "{\"type\":\"EXPENSE\",\"subType\":\"Еда\",\"month\":\"" + YearMonth.now() + "\",\"limit\":\"500\"}");
+        send("POST", "/api/operations", token,
+                "{\"type\":\"INCOME\",\"subType\":\"Зарплата\",\"amount\":\"100000\",\"name\":\"аванс\"}");
+        return token;
+    }
+
+    // Смесь запросов одного клиента; возвращает задержку каждого запроса в наносекундах
+    private long[] session(String token, String neighbour, int requests) throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] latencies = new long[requests];
+
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            try {
+                int kind = random.nextInt(10);
+                HttpResponse<String> r;
+                if (kind < 5) {
+                    r = send("POST", "/api/operations", token,
+                            "{\"type\":\"EXPENSE\",\"subType\":\"Еда\",\"amount\":\"" + random.nextInt(1, 100)
+                                    + "\",\"name\":\"обед\"}");
+                } else if (kind < 7) {
+                    r = send("GET", "/api/operations?limit=20", token, null);
+                } else if (kind < 9) {
+                    r = send("GET", "/api/actuals", token, null);
+                } else {
+                    r = send("POST", "/api/transfer", token, "{\"to\":\"" + neighbour + "\",\"amount\":\"1\"}");
+                }
+                if (r.statusCode() >= 300) errors.incrementAndGet();
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(url + path))
+                .timeout(Duration.ofSeconds(60))
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) b.header("Authorization", "Bearer " + token);
+        if (body != null) b.header("Content-Type", "application/json");
+        return http.send(b.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void report(String phase, int count, long elapsedNanos, long[] latencies) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%s: %d запросов за %.2f с, %.0f в секунду%n", phase, count, seconds, count / seconds);
+        if (latencies == null || latencies.length == 0) return;
+
+        Arrays.sort(latencies);
+        System.out.printf("  задержка, мс: медиана %.2f, p95 %.2f, p99 %.2f, максимум %.2f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.95),
+                percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(p * (sorted.length - 1)))] / 1e6;
+    }
+}
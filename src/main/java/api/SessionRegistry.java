@@ -0,0 +1,70 @@
+package api;
+
+import model.User;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Сессии API: случайный токен -> пользователь.
+// Сессия держит ссылку на User, поэтому вошедший пользователь не выгружается из DataStore.
+// Сессия без запросов дольше ttlMillis закрывается; просроченные удаляются при создании новых.
+class SessionRegistry {
+    // раз в столько входов просматриваются все сессии
+    private static final int PURGE_EVERY = 1024;
+
+    private static final class Session {
+        final User user;
+        volatile long lastAccess;
+
+        Session(User user, long now) {
+            this.user = user;
+            this.lastAccess = now;
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicInteger created = new AtomicInteger();
+    private final long ttlMillis;
+
+    SessionRegistry(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    String open(User user) {
+        long now = System.currentTimeMillis();
+        if (created.incrementAndGet() % PURGE_EVERY == 0) {
+            sessions.values().removeIf(s -> now - s.lastAccess > ttlMillis);
+        }
+
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(user, now));
+        return token;
+    }
+
+    // null, если токена нет или сессия просрочена
+    User get(String token) {
+        if (token == null) return null;
+        Session s = sessions.get(token);
+        if (s == null) return null;
+
+        long now = System.currentTimeMillis();
+        if (now - s.lastAccess > ttlMillis) {
+            sessions.remove(token, s);
+            return null;
+        }
+        s.lastAccess = now;
+        return s.user;
+    }
+
+    void close(String token) {
+        if (token != null) sessions.remove(token);
+    }
+
+    int size() { return sessions.size(); }
+}
@@ -1,6 +1,8 @@
 package exceptions;
 
 public class AuthException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public AuthException(String message) {
         super(message);
     }
@@ -1,6 +1,8 @@
 package exceptions;
 
 public class NotFoundException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public NotFoundException(String message) {
         super(message);
     }
@@ -0,0 +1,11 @@
+package exceptions;
+
+// Изменения применены в памяти, но не записаны на диск (полностью или частично),
+// или хранилище отказалось их принять, потому что данные загружены не полностью
+public class StorageException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public StorageException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,8 @@
 package exceptions;
 
 public class ValidationException extends Exception {
+    private static final long serialVersionUID = 1L;
+
     public ValidationException(String message) {
         super(message);
     }
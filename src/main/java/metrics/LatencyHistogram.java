@@ -0,0 +1,102 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Гистограмма задержек в наносекундах с логарифмическими корзинами, как в HdrHistogram:
+// каждая степень двойки делится на SUB_BUCKETS равных корзин, поэтому относительная
+// погрешность перцентилей не больше 1/SUB_BUCKETS при любом масштабе — от микросекунд до минут.
+// Запись — несколько атомарных сложений без блокировок и выделения памяти.
+// Значения накапливаются с запуска процесса.
+public class LatencyHistogram implements LatencyHistogramMXBean {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // корзины до 2^62 нс — больше любой реальной задержки
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        if (nanos > maxNanos.get()) maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    // Время от start (System.nanoTime) до текущего момента
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    // Значения меньше SUB_BUCKETS << 1 лежат каждое в своей корзине,
+    // дальше корзина — старшие SUB_BITS + 1 бит значения
+    static int bucket(long v) {
+        if (v < SUB_BUCKETS) return (int) v;
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((v >>> shift) - SUB_BUCKETS);
+    }
+
+    // Наибольшее значение, попадающее в корзину i
+    static long highestIn(int i) {
+        if (i < 2 * SUB_BUCKETS) return i;
+        int shift = i / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + i % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    // Перцентиль p (0..100) в наносекундах: верхняя граница корзины, но не больше максимума
+    public long percentileNanos(double p) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(highestIn(i), maxNanos.get());
+        }
+        return maxNanos.get();
+    }
+
+    // ==========================
+    //            JMX
+    // ==========================
+    @Override public long getCount() { return count.sum(); }
+    @Override public long getTotalMillis() { return totalNanos.sum() / 1_000_000; }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1e3 / n;
+    }
+
+    @Override public double getP50Micros() { return percentileNanos(50) / 1e3; }
+    @Override public double getP90Micros() { return percentileNanos(90) / 1e3; }
+    @Override public double getP99Micros() { return percentileNanos(99) / 1e3; }
+    @Override public double getP999Micros() { return percentileNanos(99.9) / 1e3; }
+    @Override public double getMaxMicros() { return maxNanos.get() / 1e3; }
+
+    @Override
+    public String toString() {
+        return String.format("%s: n=%d, среднее %.1f мкс, p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, макс. %.1f мкс",
+                name, getCount(), getMeanMicros(), getP50Micros(), getP90Micros(), getP99Micros(),
+                getP999Micros(), getMaxMicros());
+    }
+}
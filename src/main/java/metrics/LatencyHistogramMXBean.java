@@ -0,0 +1,13 @@
+package metrics;
+
+// Атрибуты гистограммы в JMX: finapp:type=Latency,name=<имя>
+public interface LatencyHistogramMXBean {
+    long getCount();
+    long getTotalMillis();
+    double getMeanMicros();
+    double getP50Micros();
+    double getP90Micros();
+    double getP99Micros();
+    double getP999Micros();
+    double getMaxMicros();
+}
@@ -0,0 +1,147 @@
+package metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Счётчики и гистограммы задержек горячих путей.
+// Реестр общий на процесс: сервис и хранилище берут метрики по имени один раз
+// и дальше только увеличивают их — без блокировок.
+//
+// Доступ снаружи: JMX (registerJmx, домен finapp) и периодическая сводка в поток (startDump).
+// Сводные показатели, которые не сводятся к счётчику или гистограмме, регистрируются
+// отдельными объектами (bean) со своим MXBean-интерфейсом.
+public final class Metrics implements MetricsMXBean {
+    private static final Metrics SHARED = new Metrics();
+    private static final String DOMAIN = "finapp";
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    // тип в JMX -> объект с MXBean-интерфейсом; в сводку попадает его toString
+    private final Map<String, Object> beans = new ConcurrentSkipListMap<>();
+    private volatile MBeanServer jmx;
+    private ScheduledExecutorService dumper;
+
+    private Metrics() {}
+
+    public static Metrics shared() {
+        return SHARED;
+    }
+
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram h = histograms.get(name);
+        if (h != null) return h;
+
+        h = histograms.computeIfAbsent(name, LatencyHistogram::new);
+        MBeanServer server = jmx;
+        if (server != null) register(server, h);
+        return h;
+    }
+
+    // Регистрирует bean как finapp:type=<type>; объект с тем же типом, добавленный раньше, остаётся
+    @SuppressWarnings("unchecked")
+    public <T> T bean(String type, T bean) {
+        Object existing = beans.putIfAbsent(type, bean);
+        if (existing != null) return (T) existing;
+
+        MBeanServer server = jmx;
+        if (server != null) register(server, type, bean);
+        return bean;
+    }
+
+    // ==========================
+    //            JMX
+    // ==========================
+    // Регистрирует реестр, гистограммы и bean-объекты; созданные позже регистрируются сразу
+    public synchronized void registerJmx() {
+        if (jmx != null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(DOMAIN + ":type=Metrics"));
+        } catch (InstanceAlreadyExistsException ignored) {
+            // уже зарегистрирован
+        } catch (JMException e) {
+            System.err.println("Метрики не зарегистрированы в JMX: " + e);
+            return;
+        }
+        jmx = server;
+        for (LatencyHistogram h : histograms.values()) register(server, h);
+        beans.forEach((type, bean) -> register(server, type, bean));
+    }
+
+    private static void register(MBeanServer server, String type, Object bean) {
+        try {
+            server.registerMBean(bean, new ObjectName(DOMAIN + ":type=" + type));
+        } catch (InstanceAlreadyExistsException ignored) {
+            // зарегистрирован из другого потока
+        } catch (JMException e) {
+            System.err.println("Метрика " + type + " не зарегистрирована в JMX: " + e);
+        }
+    }
+
+    private static void register(MBeanServer server, LatencyHistogram h) {
+        try {
+            server.registerMBean(h, new ObjectName(DOMAIN + ":type=Latency,name=" + ObjectName.quote(h.getName())));
+        } catch (InstanceAlreadyExistsException ignored) {
+            // зарегистрирована из другого потока
+        } catch (JMException e) {
+            System.err.println("Гистограмма " + h.getName() + " не зарегистрирована в JMX: " + e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        counters.forEach((name, c) -> values.put(name, c.sum()));
+        return values;
+    }
+
+    // ==========================
+    //          СВОДКА
+    // ==========================
+    @Override
+    public String getReport() {
+        StringBuilder sb = new StringBuilder("=== Метрики ")
+                .append(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)).append(" ===\n");
+        counters.forEach((name, c) -> sb.append(name).append(": ").append(c.sum()).append('\n'));
+        for (LatencyHistogram h : histograms.values()) {
+            if (h.getCount() > 0) sb.append(h).append('\n');
+        }
+        beans.forEach((type, bean) -> sb.append(type).append(": ").append(bean).append('\n'));
+        return sb.toString();
+    }
+
+    // Печатает сводку в out раз в periodSeconds; повторный вызов заменяет расписание
+    public synchronized void startDump(long periodSeconds, PrintStream out) {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "finapp-metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> out.print(getReport()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopDump() {
+        if (dumper != null) {
+            dumper.shutdown();
+            dumper = null;
+        }
+    }
+}
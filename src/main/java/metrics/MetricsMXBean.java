@@ -0,0 +1,9 @@
+package metrics;
+
+import java.util.Map;
+
+// Счётчики и сводка всех метрик в JMX: finapp:type=Metrics
+public interface MetricsMXBean {
+    Map<String, Long> getCounters();
+    String getReport();
+}
@@ -1,29 +1,59 @@
 package model;
 
-import java.io.Serializable;
 import java.time.YearMonth;
 
-public class BudgetItem implements Serializable {
+public class BudgetItem {
     private final OperationType type;
-    private final String subType;
+    private final SubTypeDictionary subTypes;
+    private final int subTypeId;
     private final YearMonth month;
-    private double limit;
+    private long limitMinor;
+    // сколько порогов уведомления уже пройдено: 0, 1 (80% лимита) или 2 (100%);
+    // не сохраняется, после загрузки выставляется по текущим суммам
+    private int alertLevel;
 
-    public BudgetItem(OperationType type, String subType, YearMonth month, double limit) {
+    public BudgetItem(SubTypeDictionary subTypes, OperationType type, String subType, YearMonth month, double limit) {
+        this(subTypes, type, subTypes.idOf(subType), month, Money.toMinor(limit));
+    }
+
+    private BudgetItem(SubTypeDictionary subTypes, OperationType type, int subTypeId, YearMonth month, long limitMinor) {
         this.type = type;
-        this.subType = subType;
+        this.subTypes = subTypes;
+        this.subTypeId = subTypeId;
         this.month = month;
-        this.limit = limit;
+        this.limitMinor = limitMinor;
+    }
+
+    public static BudgetItem ofMinor(SubTypeDictionary subTypes, OperationType type, String subType,
+                                     YearMonth month, long limitMinor) {
+        return ofMinor(subTypes, type, subTypes.idOf(subType), month, limitMinor);
+    }
+
+    // subTypeId — номер из словаря subTypes
+    public static BudgetItem ofMinor(SubTypeDictionary subTypes, OperationType type, int subTypeId,
+                                     YearMonth month, long limitMinor) {
+        return new BudgetItem(subTypes, type, subTypeId, month, limitMinor);
     }
 
     public OperationType getType() { return type; }
-    public String getSubType() { return subType; }
+    public String getSubType() { return subTypes.name(subTypeId); }
+    public int getSubTypeId() { return subTypeId; }
     public YearMonth getMonth() { return month; }
-    public double getLimit() { return limit; }
-    public void setLimit(double limit) { this.limit = limit; }
+    public double getLimit() { return Money.toMajor(limitMinor); }
+    public long getLimitMinor() { return limitMinor; }
+    public void setLimitMinor(long limitMinor) { this.limitMinor = limitMinor; }
+    public int getAlertLevel() { return alertLevel; }
+    public void setAlertLevel(int alertLevel) { this.alertLevel = alertLevel; }
+
+    // Сколько порогов пройдено при сумме spentMinor
+    public int thresholdsReached(long spentMinor) {
+        if (spentMinor >= limitMinor) return 2;
+        if (spentMinor * 5 >= limitMinor * 4) return 1;
+        return 0;
+    }
 
     @Override
     public String toString() {
-        return type + " | " + subType + " | " + month + " | лимит: " + limit;
+        return type + " | " + getSubType() + " | " + month + " | лимит: " + Money.format(limitMinor);
     }
-}
\ No newline at end of file
+}
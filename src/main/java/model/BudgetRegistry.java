@@ -0,0 +1,57 @@
+package model;
+
+import java.time.YearMonth;
+import java.util.*;
+
+// Бюджеты пользователя с ключом (тип, номер подтипа, месяц).
+// На каждый ключ — не больше одного бюджета; поиск по ключу и выборка за месяц
+// не требуют прохода по всем бюджетам. Обход — в порядке добавления.
+public class BudgetRegistry implements Iterable<BudgetItem> {
+    private final Map<Key, BudgetItem> byKey = new LinkedHashMap<>();
+    private final TreeMap<YearMonth, List<BudgetItem>> byMonth = new TreeMap<>();
+
+    // false, если бюджет с таким ключом уже есть
+    public boolean add(BudgetItem b) {
+        if (byKey.putIfAbsent(new Key(b.getType(), b.getSubTypeId(), b.getMonth()), b) != null) return false;
+        byMonth.computeIfAbsent(b.getMonth(), m -> new ArrayList<>()).add(b);
+        return true;
+    }
+
+    public BudgetItem find(OperationType type, int subTypeId, YearMonth month) {
+        return byKey.get(new Key(type, subTypeId, month));
+    }
+
+    public List<BudgetItem> month(YearMonth month) {
+        List<BudgetItem> items = byMonth.get(month);
+        return items == null ? List.of() : Collections.unmodifiableList(items);
+    }
+
+    // Бюджеты с from по to включительно, по возрастанию месяца; null — без границы
+    public Iterable<BudgetItem> range(YearMonth from, YearMonth to) {
+        if (from != null && to != null && from.isAfter(to)) return List.of();
+
+        NavigableMap<YearMonth, List<BudgetItem>> span = byMonth;
+        if (from != null) span = span.tailMap(from, true);
+        if (to != null) span = span.headMap(to, true);
+        Collection<List<BudgetItem>> parts = span.values();
+        return () -> parts.stream().flatMap(List::stream).iterator();
+    }
+
+    public int size() { return byKey.size(); }
+
+    public List<BudgetItem> toList() {
+        return new ArrayList<>(byKey.values());
+    }
+
+    @Override
+    public Iterator<BudgetItem> iterator() {
+        return Collections.unmodifiableCollection(byKey.values()).iterator();
+    }
+
+    @Override
+    public String toString() {
+        return byKey.values().toString();
+    }
+
+    private record Key(OperationType type, int subTypeId, YearMonth month) {}
+}
@@ -0,0 +1,139 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Столбцовое хранение месяца: день, тип, подтип, сумма и номер строки — в массивах примитивов,
+// названия — в общем массиве байт UTF-8 (строка: смещение и длина).
+// Около 29 байт на операцию плюс название вместо сотни с лишним у объекта Operation.
+class ColumnarOperationChunk extends OperationChunk {
+    private static final OperationType[] TYPES = OperationType.values();
+
+    private final SubTypeDictionary subTypeNames;
+    private int[] days;
+    private byte[] types;
+    private int[] subTypes;
+    private long[] amounts;
+    private int[] nameStart;
+    private int[] nameLength;
+    private int[] rowIds;
+    private byte[] names;
+    private int namesUsed;
+    private int size;
+
+    ColumnarOperationChunk(int capacity, SubTypeDictionary subTypeNames) {
+        this.subTypeNames = subTypeNames;
+        int n = Math.max(8, capacity);
+        days = new int[n];
+        types = new byte[n];
+        subTypes = new int[n];
+        amounts = new long[n];
+        nameStart = new int[n];
+        nameLength = new int[n];
+        rowIds = new int[n];
+        names = new byte[n * 16];
+    }
+
+    @Override
+    int size() { return size; }
+
+    @Override
+    Operation get(int i) {
+        return Operation.ofMinor(subTypeNames, TYPES[types[i]], subTypes[i], amounts[i], name(i), LocalDate.ofEpochDay(days[i]));
+    }
+
+    @Override
+    long epochDay(int i) { return days[i]; }
+
+    @Override
+    int subTypeId(int i) { return subTypes[i]; }
+
+    @Override
+    OperationType type(int i) { return TYPES[types[i]]; }
+
+    @Override
+    long amountMinor(int i) { return amounts[i]; }
+
+    @Override
+    int rowId(int i) { return rowIds[i]; }
+
+    @Override
+    void insert(int at, Operation o, int rowId) {
+        if (size == days.length) grow();
+
+        int tail = size - at;
+        if (tail > 0) {
+            System.arraycopy(days, at, days, at + 1, tail);
+            System.arraycopy(types, at, types, at + 1, tail);
+            System.arraycopy(subTypes, at, subTypes, at + 1, tail);
+            System.arraycopy(amounts, at, amounts, at + 1, tail);
+            System.arraycopy(nameStart, at, nameStart, at + 1, tail);
+            System.arraycopy(nameLength, at, nameLength, at + 1, tail);
+            System.arraycopy(rowIds, at, rowIds, at + 1, tail);
+        }
+
+        byte[] name = o.getName().getBytes(StandardCharsets.UTF_8);
+        if (namesUsed + name.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesUsed + name.length));
+        }
+        System.arraycopy(name, 0, names, namesUsed, name.length);
+
+        days[at] = (int) o.getDate().toEpochDay();
+        types[at] = (byte) o.getType().ordinal();
+        subTypes[at] = o.getSubTypeId();
+        amounts[at] = o.getAmountMinor();
+        nameStart[at] = namesUsed;
+        nameLength[at] = name.length;
+        rowIds[at] = rowId;
+        namesUsed += name.length;
+        size++;
+    }
+
+    @Override
+    void forEach(int lo, int hi, OperationLog.RowVisitor v) {
+        for (int i = lo; i < hi; i++) v.accept(days[i], TYPES[types[i]], subTypes[i], amounts[i], name(i));
+    }
+
+    // Слово из цифр сначала ищется в байтах UTF-8 названия: строка создаётся,
+    // только если эти байты в названии есть
+    @Override
+    boolean nameStartsWord(int i, String prefix) {
+        if (isAscii(prefix) && !containsAscii(i, prefix)) return false;
+        return super.nameStartsWord(i, prefix);
+    }
+
+    private boolean containsAscii(int i, String s) {
+        int from = nameStart[i];
+        int last = from + nameLength[i] - s.length();
+        for (int at = from; at <= last; at++) {
+            int j = 0;
+            while (j < s.length() && names[at + j] == s.charAt(j)) j++;
+            if (j == s.length()) return true;
+        }
+        return false;
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    @Override
+    String name(int i) {
+        return new String(names, nameStart[i], nameLength[i], StandardCharsets.UTF_8);
+    }
+
+    private void grow() {
+        int n = days.length * 2;
+        days = Arrays.copyOf(days, n);
+        types = Arrays.copyOf(types, n);
+        subTypes = Arrays.copyOf(subTypes, n);
+        amounts = Arrays.copyOf(amounts, n);
+        nameStart = Arrays.copyOf(nameStart, n);
+        nameLength = Arrays.copyOf(nameLength, n);
+        rowIds = Arrays.copyOf(rowIds, n);
+    }
+}
@@ -0,0 +1,68 @@
+package model;
+
+// Денежные суммы хранятся в копейках (long), double остаётся только на границах:
+// ввод пользователя, старые форматы файлов и публичные методы, возвращающие double.
+public final class Money {
+    public static final long MINOR_PER_UNIT = 100;
+
+    private Money() {}
+
+    public static long toMinor(double amount) {
+        return Math.round(amount * MINOR_PER_UNIT);
+    }
+
+    public static double toMajor(long minor) {
+        return minor / (double) MINOR_PER_UNIT;
+    }
+
+    // "12345.67" -> 1234567, "5" -> 500, "0.5" -> 50; больше двух знаков после точки — ошибка
+    public static long parseMinor(String text) {
+        int i = 0;
+        boolean negative = text.startsWith("-");
+        if (negative) i++;
+
+        long units = 0;
+        int digits = 0;
+        for (; i < text.length() && text.charAt(i) != '.'; i++, digits++) {
+            units = Math.addExact(Math.multiplyExact(units, 10), digit(text, i));
+        }
+
+        long cents = 0;
+        int scale = 0;
+        if (i < text.length()) {
+            for (i++; i < text.length(); i++, scale++) {
+                if (scale == 2) throw new NumberFormatException("Больше двух знаков после точки: " + text);
+                cents = cents * 10 + digit(text, i);
+            }
+        }
+        if (digits == 0 && scale == 0) throw new NumberFormatException("Некорректная сумма: " + text);
+        if (scale == 1) cents *= 10;
+
+        long minor = Math.addExact(Math.multiplyExact(units, MINOR_PER_UNIT), cents);
+        return negative ? -minor : minor;
+    }
+
+    private static int digit(String text, int i) {
+        char c = text.charAt(i);
+        if (c < '0' || c > '9') throw new NumberFormatException("Некорректная сумма: " + text);
+        return c - '0';
+    }
+
+    // 1234567 -> "12345.67", -5 -> "-0.05"
+    public static String format(long minor) {
+        StringBuilder sb = new StringBuilder(24);
+        appendTo(sb, minor);
+        return sb.toString();
+    }
+
+    public static void appendTo(StringBuilder sb, long minor) {
+        if (minor < 0) {
+            sb.append('-');
+            minor = -minor;
+        }
+        long cents = minor % MINOR_PER_UNIT;
+        sb.append(minor / MINOR_PER_UNIT).append('.');
+        if (cents < 10) sb.append('0');
+        sb.append(cents);
+    }
+}
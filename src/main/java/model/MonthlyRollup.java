@@ -0,0 +1,176 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+
+// Итоги месяца пользователя: доходы и расходы по подтипам и в целом.
+// Неизменяемый снимок: его можно отдавать наружу и читать без блокировки пользователя.
+//
+// User ведёт итоги каждого месяца (Accumulator) при добавлении операции и кэширует снимок;
+// операция за месяц сбрасывает кэш только этого месяца. Поэтому отчёты по длинной истории
+// собираются из готовых итогов за O(месяцев), а не проходом по операциям.
+public final class MonthlyRollup {
+
+    // Сумма по подтипу
+    public interface SubTypeVisitor {
+        void accept(int subTypeId, long amountMinor);
+    }
+
+    private final YearMonth month;
+    // подтипы с ненулевой суммой: номера из SubTypeDictionary по возрастанию и суммы
+    private final int[] incomeIds;
+    private final long[] income;
+    private final int[] expenseIds;
+    private final long[] expense;
+    private final long incomeMinor;
+    private final long expenseMinor;
+    private final int operations;
+
+    private MonthlyRollup(YearMonth month, Sums income, Sums expense, int operations) {
+        this.month = month;
+        this.incomeIds = income.sortedIds();
+        this.income = income.values(incomeIds);
+        this.expenseIds = expense.sortedIds();
+        this.expense = expense.values(expenseIds);
+        this.incomeMinor = Arrays.stream(this.income).sum();
+        this.expenseMinor = Arrays.stream(this.expense).sum();
+        this.operations = operations;
+    }
+
+    public static MonthlyRollup empty(YearMonth month) {
+        return new MonthlyRollup(month, new Sums(), new Sums(), 0);
+    }
+
+    // Итоги части месяца [from, to] проходом по операциям — для неполных месяцев на границах периода
+    public static MonthlyRollup of(OperationLog log, YearMonth month, LocalDate from, LocalDate to) {
+        LocalDate start = month.atDay(1);
+        LocalDate end = month.atEndOfMonth();
+        if (from != null && from.isAfter(start)) start = from;
+        if (to != null && to.isBefore(end)) end = to;
+
+        Accumulator acc = new Accumulator();
+        log.forEach(start, end, (day, type, subTypeId, amountMinor, name) -> acc.add(type, subTypeId, amountMinor));
+        return acc.snapshot(month);
+    }
+
+    public YearMonth getMonth() { return month; }
+    public long getIncomeMinor() { return incomeMinor; }
+    public long getExpenseMinor() { return expenseMinor; }
+    public long getNetMinor() { return incomeMinor - expenseMinor; }
+    public int getOperationCount() { return operations; }
+
+    public long getTotalMinor(OperationType type, int subTypeId) {
+        int[] ids = type == OperationType.INCOME ? incomeIds : expenseIds;
+        int at = Arrays.binarySearch(ids, subTypeId);
+        return at < 0 ? 0 : (type == OperationType.INCOME ? income : expense)[at];
+    }
+
+    public long getTotalMinor(OperationType type) {
+        return type == OperationType.INCOME ? incomeMinor : expenseMinor;
+    }
+
+    // Подтипы с ненулевой суммой, по возрастанию номера
+    public void forEach(OperationType type, SubTypeVisitor v) {
+        int[] ids = type == OperationType.INCOME ? incomeIds : expenseIds;
+        long[] sums = type == OperationType.INCOME ? income : expense;
+        for (int i = 0; i < ids.length; i++) v.accept(ids[i], sums[i]);
+    }
+
+    @Override
+    public String toString() {
+        return month + ": доходы " + Money.format(incomeMinor) + ", расходы " + Money.format(expenseMinor)
+                + ", операций " + operations;
+    }
+
+    // ==========================
+    //     ИЗМЕНЯЕМЫЕ ИТОГИ
+    // ==========================
+    // Итоги месяца, которые ведёт User; снимок строится один раз до следующей операции за месяц
+    static final class Accumulator {
+        private final Sums income = new Sums();
+        private final Sums expense = new Sums();
+        private int operations;
+        private MonthlyRollup cached;
+
+        void add(OperationType type, int subTypeId, long amountMinor) {
+            (type == OperationType.INCOME ? income : expense).add(subTypeId, amountMinor);
+            operations++;
+            cached = null;
+        }
+
+        long total(OperationType type, int subTypeId) {
+            return (type == OperationType.INCOME ? income : expense).get(subTypeId);
+        }
+
+        MonthlyRollup snapshot(YearMonth month) {
+            if (cached == null) cached = new MonthlyRollup(month, income, expense, operations);
+            return cached;
+        }
+    }
+
+    // Номер подтипа -> сумма, открытая адресация. Номера общие для всех пользователей и растут
+    // с их числом (переводы заводят подтип на каждого получателя), поэтому массив по номеру
+    // занял бы у каждого месяца место под чужие подтипы; здесь — только под встреченные
+    private static final class Sums {
+        // номер + 1; 0 — свободная ячейка
+        private int[] keys = new int[4];
+        private long[] values = new long[4];
+        private int size;
+
+        void add(int id, long amountMinor) {
+            if (2 * (size + 1) > keys.length) rehash(keys.length * 2);
+            int at = slot(keys, id);
+            if (keys[at] == 0) {
+                keys[at] = id + 1;
+                size++;
+            }
+            values[at] += amountMinor;
+        }
+
+        long get(int id) {
+            if (id < 0) return 0;
+            int at = slot(keys, id);
+            return keys[at] == 0 ? 0 : values[at];
+        }
+
+        // Номера с ненулевой суммой по возрастанию
+        int[] sortedIds() {
+            int[] ids = new int[size];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && values[i] != 0) ids[n++] = keys[i] - 1;
+            }
+            ids = Arrays.copyOf(ids, n);
+            Arrays.sort(ids);
+            return ids;
+        }
+
+        long[] values(int[] ids) {
+            long[] result = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) result[i] = get(ids[i]);
+            return result;
+        }
+
+        private void rehash(int capacity) {
+            int[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new int[capacity];
+            values = new long[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == 0) continue;
+                int at = slot(keys, oldKeys[i] - 1);
+                keys[at] = oldKeys[i];
+                values[at] = oldValues[i];
+            }
+        }
+
+        // Ячейка номера id или первая свободная на его пути
+        private static int slot(int[] keys, int id) {
+            int mask = keys.length - 1;
+            int at = (id * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask);
+            while (keys[at] != 0 && keys[at] != id + 1) at = (at + 1) & mask;
+            return at;
+        }
+    }
+}
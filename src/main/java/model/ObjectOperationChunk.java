@@ -0,0 +1,51 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class ObjectOperationChunk extends OperationChunk {
+    private final List<Operation> ops = new ArrayList<>();
+    private int[] rowIds = new int[8];
+
+    @Override
+    int size() { return ops.size(); }
+
+    @Override
+    Operation get(int i) { return ops.get(i); }
+
+    @Override
+    long epochDay(int i) { return ops.get(i).getDate().toEpochDay(); }
+
+    @Override
+    int subTypeId(int i) { return ops.get(i).getSubTypeId(); }
+
+    @Override
+    OperationType type(int i) { return ops.get(i).getType(); }
+
+    @Override
+    long amountMinor(int i) { return ops.get(i).getAmountMinor(); }
+
+    @Override
+    String name(int i) { return ops.get(i).getName(); }
+
+    @Override
+    int rowId(int i) { return rowIds[i]; }
+
+    @Override
+    void insert(int at, Operation o, int rowId) {
+        int size = ops.size();
+        if (size == rowIds.length) rowIds = Arrays.copyOf(rowIds, size * 2);
+        System.arraycopy(rowIds, at, rowIds, at + 1, size - at);
+        rowIds[at] = rowId;
+        ops.add(at, o);
+    }
+
+    @Override
+    void forEach(int lo, int hi, OperationLog.RowVisitor v) {
+        for (int i = lo; i < hi; i++) {
+            Operation o = ops.get(i);
+            v.accept(o.getDate().toEpochDay(), o.getType(), o.getSubTypeId(), o.getAmountMinor(), o.getName());
+        }
+    }
+}
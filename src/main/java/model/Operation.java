@@ -1,31 +1,51 @@
 package model;
 
-import java.io.Serializable;
 import java.time.LocalDate;
 
-public class Operation implements Serializable {
+public class Operation {
     private final OperationType type;
-    private final String subType;
-    private final double amount;
+    private final SubTypeDictionary subTypes;
+    private final int subTypeId;
+    private final long amountMinor;
     private final String name;
     private final LocalDate date;
 
-    public Operation(OperationType type, String subType, double amount, String name, LocalDate date) {
+    public Operation(SubTypeDictionary subTypes, OperationType type, String subType, double amount,
+                     String name, LocalDate date) {
+        this(subTypes, type, subTypes.idOf(subType), Money.toMinor(amount), name, date);
+    }
+
+    private Operation(SubTypeDictionary subTypes, OperationType type, int subTypeId, long amountMinor,
+                      String name, LocalDate date) {
         this.type = type;
-        this.subType = subType;
-        this.amount = amount;
+        this.subTypes = subTypes;
+        this.subTypeId = subTypeId;
+        this.amountMinor = amountMinor;
         this.name = name;
         this.date = date;
     }
 
+    public static Operation ofMinor(SubTypeDictionary subTypes, OperationType type, String subType,
+                                    long amountMinor, String name, LocalDate date) {
+        return ofMinor(subTypes, type, subTypes.idOf(subType), amountMinor, name, date);
+    }
+
+    // subTypeId — номер из словаря subTypes
+    public static Operation ofMinor(SubTypeDictionary subTypes, OperationType type, int subTypeId,
+                                    long amountMinor, String name, LocalDate date) {
+        return new Operation(subTypes, type, subTypeId, amountMinor, name, date);
+    }
+
     public OperationType getType() { return type; }
-    public String getSubType() { return subType; }
-    public double getAmount() { return amount; }
+    public String getSubType() { return subTypes.name(subTypeId); }
+    public int getSubTypeId() { return subTypeId; }
+    public double getAmount() { return Money.toMajor(amountMinor); }
+    public long getAmountMinor() { return amountMinor; }
     public String getName() { return name; }
     public LocalDate getDate() { return date; }
 
     @Override
     public String toString() {
-        return date + " | " + type + " | " + subType + " | " + amount + " | " + name;
+        return date + " | " + type + " | " + getSubType() + " | " + Money.format(amountMinor) + " | " + name;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,56 @@
+package model;
+
+// Операции одного месяца, упорядоченные по дате.
+// Две реализации: объекты Operation и столбцы примитивов для больших историй.
+abstract class OperationChunk {
+
+    abstract int size();
+
+    // Для столбцового хранения Operation создаётся при каждом вызове
+    abstract Operation get(int i);
+
+    abstract long epochDay(int i);
+
+    abstract OperationType type(int i);
+
+    abstract long amountMinor(int i);
+
+    abstract int subTypeId(int i);
+
+    abstract String name(int i);
+
+    // prefix — начало какого-нибудь слова названия (prefix в нижнем регистре)
+    boolean nameStartsWord(int i, String prefix) {
+        return OperationSearchIndex.startsWord(name(i), prefix);
+    }
+
+    // номер строки в OperationLog (порядок добавления); не меняется при вставке задним числом
+    abstract int rowId(int i);
+
+    abstract void insert(int at, Operation o, int rowId);
+
+    // строки [lo, hi)
+    abstract void forEach(int lo, int hi, OperationLog.RowVisitor v);
+
+    // первая операция с датой >= day
+    int lowerBound(long day) {
+        int lo = 0, hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochDay(mid) < day) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // первая операция с датой > day
+    int upperBound(long day) {
+        int lo = 0, hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochDay(mid) > day) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,271 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.function.Predicate;
+
+// Операции пользователя, упорядоченные по дате и разбитые на месяцы.
+// Операция задним числом встаёт на своё место в месяце (после операций с той же датой),
+// поэтому выборки за период — это двоичный поиск по границам плюс проход по результату.
+//
+// Пока операций меньше COLUMNAR_THRESHOLD, месяц хранит объекты Operation.
+// Дальше журнал переходит на столбцы примитивов (ColumnarOperationChunk):
+// объекты Operation создаются только при выдаче наружу, суммирование идёт по массивам.
+//
+// Поиск (search) идёт по обратному индексу OperationSearchIndex. Индекс строится
+// при первом поиске одним проходом по журналу и дальше пополняется в add.
+public class OperationLog implements Iterable<Operation> {
+    public static final int COLUMNAR_THRESHOLD = 50_000;
+    // до стольких найденных строк страница выбирается сортировкой найденного по дате,
+    // дальше — проходом по журналу в порядке дат до конца страницы
+    private static final int SORT_LIMIT = 1 << 14;
+
+    // Строка журнала без создания Operation
+    public interface RowVisitor {
+        void accept(long epochDay, OperationType type, int subTypeId, long amountMinor, String name);
+    }
+
+    private final TreeMap<YearMonth, OperationChunk> months = new TreeMap<>();
+    // словарь, по которому выданы номера подтипов операций
+    private final SubTypeDictionary subTypes;
+    private boolean columnar;
+    private int size;
+    private OperationSearchIndex search;
+
+    public OperationLog(SubTypeDictionary subTypes) {
+        this.subTypes = subTypes;
+    }
+
+    public void add(Operation o) {
+        OperationChunk chunk = months.computeIfAbsent(YearMonth.from(o.getDate()), m -> newChunk(0));
+        long day = o.getDate().toEpochDay();
+        int at = chunk.size();
+        if (at > 0 && chunk.epochDay(at - 1) > day) at = chunk.upperBound(day);
+        int rowId = size;
+        chunk.insert(at, o, rowId);
+        if (search != null) search.add(rowId, day, o.getType(), o.getSubTypeId(), o.getAmountMinor(), o.getName());
+        size++;
+        if (!columnar && size >= COLUMNAR_THRESHOLD) toColumnar();
+    }
+
+    public int size() { return size; }
+
+    // Операции с from по to включительно, по возрастанию даты; null — без границы
+    public Iterable<Operation> range(LocalDate from, LocalDate to) {
+        List<Slice> parts = slices(from, to);
+        return () -> parts.stream().flatMap(List::stream).iterator();
+    }
+
+    // Страница выборки: пропустить offset операций, вернуть не больше limit
+    public List<Operation> page(LocalDate from, LocalDate to, int offset, int limit) {
+        List<Operation> page = new ArrayList<>(Math.min(limit, size));
+        for (Slice part : slices(from, to)) {
+            if (offset >= part.size()) {
+                offset -= part.size();
+                continue;
+            }
+            int end = Math.min(part.size(), offset + limit - page.size());
+            page.addAll(part.subList(offset, end));
+            offset = 0;
+            if (page.size() == limit) break;
+        }
+        return page;
+    }
+
+    public int count(LocalDate from, LocalDate to) {
+        int n = 0;
+        for (Slice part : slices(from, to)) n += part.size();
+        return n;
+    }
+
+    public List<Operation> toList() {
+        List<Operation> all = new ArrayList<>(size);
+        for (OperationChunk chunk : months.values()) all.addAll(new Slice(chunk, 0, chunk.size()));
+        return all;
+    }
+
+    // Все строки по возрастанию даты
+    public void forEach(RowVisitor v) {
+        forEach(null, null, v);
+    }
+
+    // Строки за период, границы как в range
+    public void forEach(LocalDate from, LocalDate to, RowVisitor v) {
+        for (Slice part : slices(from, to)) part.chunk.forEach(part.lo, part.hi, v);
+    }
+
+    // ==========================
+    //           ПОИСК
+    // ==========================
+    // Страница операций, подходящих под запрос, по возрастанию даты, и общее число найденных.
+    // Слова с буквами отбирают строки-кандидаты по индексу, период, тип и сумма проверяются по массивам индекса.
+    // Просматриваются либо кандидаты, либо строки периода запроса — чего меньше; слова из цифр
+    // проверяются по названиям, и при многих кандидатах строки периода читаются подряд.
+    public OperationPage search(OperationQuery q, int offset, int limit) {
+        OperationSearchIndex index = searchIndex();
+        List<String> letters = new ArrayList<>();
+        List<String> digits = new ArrayList<>();
+        for (String w : OperationSearchIndex.words(q.getText())) {
+            (OperationSearchIndex.hasLetter(w) ? letters : digits).add(w);
+        }
+
+        BitSet candidates = letters.isEmpty() ? null : index.lookup(letters);
+        int candidateCount = candidates == null ? size : candidates.cardinality();
+        BitSet found = new BitSet(size);
+        if (candidates != null && candidateCount <= count(q.getFrom(), q.getTo())
+                && (digits.isEmpty() || candidateCount <= SORT_LIMIT)) {
+            for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+                if (!index.matches(id, q)) continue;
+                if (!digits.isEmpty()) {
+                    Operation o = find(id);
+                    if (!matchesDigits(index, o.getSubTypeId(), digits, d -> OperationSearchIndex.startsWord(o.getName(), d)))
+                        continue;
+                }
+                found.set(id);
+            }
+        } else {
+            // столбцы куска читаются подряд; массивы индекса по номеру строки — вразброс
+            for (Slice part : slices(q.getFrom(), q.getTo())) {
+                OperationChunk chunk = part.chunk;
+                for (int i = part.lo; i < part.hi; i++) {
+                    if (!q.matches(chunk.epochDay(i), chunk.type(i), chunk.amountMinor(i))) continue;
+                    int id = chunk.rowId(i);
+                    if (candidates != null && !candidates.get(id)) continue;
+                    int row = i;
+                    if (!digits.isEmpty() && !matchesDigits(index, chunk.subTypeId(i), digits, d -> chunk.nameStartsWord(row, d)))
+                        continue;
+                    found.set(id);
+                }
+            }
+        }
+
+        int total = found.cardinality();
+        if (offset >= total || limit <= 0) return new OperationPage(total, List.of());
+        return new OperationPage(total, total <= SORT_LIMIT
+                ? pageBySort(index, found, total, offset, limit)
+                : pageByScan(q, found, offset, limit));
+    }
+
+    // Каждое из слов без букв — начало слова подтипа или названия
+    private static boolean matchesDigits(OperationSearchIndex index, int subTypeId, List<String> digits,
+                                         Predicate<String> inName) {
+        for (String d : digits) {
+            if (!index.subTypeStartsWord(subTypeId, d) && !inName.test(d)) return false;
+        }
+        return true;
+    }
+
+    // Ключ (день, номер строки): тот же порядок, что в журнале
+    private List<Operation> pageBySort(OperationSearchIndex index, BitSet found, int total, int offset, int limit) {
+        long[] keys = new long[total];
+        int k = 0;
+        for (int id = found.nextSetBit(0); id >= 0; id = found.nextSetBit(id + 1)) {
+            keys[k++] = index.epochDay(id) << 32 | id;
+        }
+        Arrays.sort(keys);
+
+        int end = Math.min(total, offset + limit);
+        List<Operation> page = new ArrayList<>(end - offset);
+        for (int j = offset; j < end; j++) page.add(find((int) keys[j]));
+        return page;
+    }
+
+    private List<Operation> pageByScan(OperationQuery q, BitSet found, int offset, int limit) {
+        List<Operation> page = new ArrayList<>(limit);
+        for (Slice part : slices(q.getFrom(), q.getTo())) {
+            for (int i = part.lo; i < part.hi; i++) {
+                if (!found.get(part.chunk.rowId(i))) continue;
+                if (offset > 0) {
+                    offset--;
+                } else {
+                    page.add(part.chunk.get(i));
+                    if (page.size() == limit) return page;
+                }
+            }
+        }
+        return page;
+    }
+
+    // Операция по номеру строки: месяц и день — из индекса, дальше поиск среди операций этого дня
+    private Operation find(int rowId) {
+        long day = search.epochDay(rowId);
+        OperationChunk chunk = months.get(YearMonth.from(LocalDate.ofEpochDay(day)));
+        for (int i = chunk.lowerBound(day), hi = chunk.upperBound(day); i < hi; i++) {
+            if (chunk.rowId(i) == rowId) return chunk.get(i);
+        }
+        throw new IllegalStateException("Строка " + rowId + " не найдена в журнале");
+    }
+
+    private OperationSearchIndex searchIndex() {
+        if (search != null) return search;
+
+        OperationSearchIndex index = new OperationSearchIndex(subTypes);
+        for (OperationChunk chunk : months.values()) {
+            int[] row = {0};
+            chunk.forEach(0, chunk.size(), (day, type, subTypeId, amountMinor, name) ->
+                    index.add(chunk.rowId(row[0]++), day, type, subTypeId, amountMinor, name));
+        }
+        index.finishBuild();
+        search = index;
+        return index;
+    }
+
+    @Override
+    public Iterator<Operation> iterator() {
+        return range(null, null).iterator();
+    }
+
+    private OperationChunk newChunk(int capacity) {
+        return columnar ? new ColumnarOperationChunk(capacity, subTypes) : new ObjectOperationChunk();
+    }
+
+    private void toColumnar() {
+        columnar = true;
+        for (Map.Entry<YearMonth, OperationChunk> e : months.entrySet()) {
+            OperationChunk old = e.getValue();
+            OperationChunk chunk = newChunk(old.size());
+            for (int i = 0; i < old.size(); i++) chunk.insert(i, old.get(i), old.rowId(i));
+            e.setValue(chunk);
+        }
+    }
+
+    // Куски месяцев, попадающие в период; крайние месяцы обрезаются двоичным поиском
+    private List<Slice> slices(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) return List.of();
+
+        NavigableMap<YearMonth, OperationChunk> span = months;
+        if (from != null) span = span.tailMap(YearMonth.from(from), true);
+        if (to != null) span = span.headMap(YearMonth.from(to), true);
+
+        List<Slice> parts = new ArrayList<>(span.size());
+        for (Map.Entry<YearMonth, OperationChunk> e : span.entrySet()) {
+            OperationChunk chunk = e.getValue();
+            int lo = from != null && e.getKey().equals(YearMonth.from(from)) ? chunk.lowerBound(from.toEpochDay()) : 0;
+            int hi = to != null && e.getKey().equals(YearMonth.from(to)) ? chunk.upperBound(to.toEpochDay()) : chunk.size();
+            if (lo < hi) parts.add(new Slice(chunk, lo, hi));
+        }
+        return parts;
+    }
+
+    // Неизменяемое окно [lo, hi) месяца; операции создаются при обращении
+    private static final class Slice extends AbstractList<Operation> implements RandomAccess {
+        private final OperationChunk chunk;
+        private final int lo, hi;
+
+        Slice(OperationChunk chunk, int lo, int hi) {
+            this.chunk = chunk;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public Operation get(int i) {
+            Objects.checkIndex(i, hi - lo);
+            return chunk.get(lo + i);
+        }
+
+        @Override
+        public int size() { return hi - lo; }
+    }
+}
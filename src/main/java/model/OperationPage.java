@@ -0,0 +1,6 @@
+package model;
+
+import java.util.List;
+
+// Страница результатов поиска и общее число найденных операций
+public record OperationPage(int total, List<Operation> items) {}
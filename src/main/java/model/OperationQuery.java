@@ -0,0 +1,53 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.Set;
+
+// Запрос поиска операций.
+// Слова: каждое должно быть началом какого-нибудь слова названия или подтипа (без учёта регистра, ё = е).
+// Период и суммы — границы включительно, null — без границы; типы — какие операции искать, null — все.
+public class OperationQuery {
+    private final String text;
+    private final LocalDate from;
+    private final LocalDate to;
+    private final Long minAmountMinor;
+    private final Long maxAmountMinor;
+    private final Set<OperationType> types;
+    // границы без null — для проверки миллионов строк
+    private final long fromDay, toDay, minMinor, maxMinor;
+
+    public OperationQuery(String text, LocalDate from, LocalDate to, Long minAmountMinor, Long maxAmountMinor,
+                          Set<OperationType> types) {
+        this.text = text == null ? "" : text;
+        this.from = from;
+        this.to = to;
+        this.minAmountMinor = minAmountMinor;
+        this.maxAmountMinor = maxAmountMinor;
+        this.types = types == null ? EnumSet.allOf(OperationType.class)
+                : types.isEmpty() ? EnumSet.noneOf(OperationType.class) : EnumSet.copyOf(types);
+        this.fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        this.toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+        this.minMinor = minAmountMinor == null ? Long.MIN_VALUE : minAmountMinor;
+        this.maxMinor = maxAmountMinor == null ? Long.MAX_VALUE : maxAmountMinor;
+    }
+
+    // Только слова, без других условий
+    public static OperationQuery text(String text) {
+        return new OperationQuery(text, null, null, null, null, EnumSet.allOf(OperationType.class));
+    }
+
+    public String getText() { return text; }
+    public LocalDate getFrom() { return from; }
+    public LocalDate getTo() { return to; }
+    public Long getMinAmountMinor() { return minAmountMinor; }
+    public Long getMaxAmountMinor() { return maxAmountMinor; }
+    public Set<OperationType> getTypes() { return types; }
+
+    // Условия, кроме слов
+    public boolean matches(long epochDay, OperationType type, long amountMinor) {
+        return epochDay >= fromDay && epochDay <= toDay
+                && amountMinor >= minMinor && amountMinor <= maxMinor
+                && types.contains(type);
+    }
+}
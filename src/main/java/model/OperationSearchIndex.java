@@ -0,0 +1,178 @@
+package model;
+
+import java.util.*;
+
+// Обратный индекс операций пользователя: слово названия или подтипа -> номера строк.
+// Номер строки — порядковый номер добавления в OperationLog, он не меняется, когда операция
+// задним числом сдвигает соседей внутри месяца. Списки номеров растут только в конец,
+// поэтому остаются упорядоченными без пересортировки.
+// По номеру строки индекс хранит день, тип и сумму: период, тип и сумма проверяются
+// по массивам, без обращения к журналу и создания Operation.
+//
+// В индекс попадают только слова с буквой. Числа ("покупка 123") почти у каждой операции свои,
+// и индекс по ним занял бы больше памяти, чем сами операции; слова запроса из одних цифр
+// проверяются по строкам: подтип — по словам из кэша (subTypeStartsWord), название — просмотром строки.
+final class OperationSearchIndex {
+    private static final OperationType[] TYPES = OperationType.values();
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    // слова по алфавиту для поиска по началу слова; null — строятся заново при следующем поиске
+    private String[] sorted;
+    private final SubTypeDictionary subTypes;
+    // все слова подтипов (и из одних цифр) по номеру из subTypes — только подтипы этого
+    // пользователя: номера общие для хранилища и растут с числом пользователей
+    private final Map<Integer, String[]> subTypeWords = new HashMap<>();
+
+    private int[] days = new int[64];
+    private byte[] types = new byte[64];
+    private long[] amounts = new long[64];
+    private int rows;
+
+    OperationSearchIndex(SubTypeDictionary subTypes) {
+        this.subTypes = subTypes;
+    }
+
+    long epochDay(int rowId) { return days[rowId]; }
+
+    // Строки добавляются в порядке номеров; при построении по готовому журналу
+    // порядок другой, и списки упорядочивает finishBuild
+    void add(int rowId, long epochDay, OperationType type, int subTypeId, long amountMinor, String name) {
+        if (rowId >= days.length) {
+            int n = Math.max(rowId + 1, days.length * 2);
+            days = Arrays.copyOf(days, n);
+            types = Arrays.copyOf(types, n);
+            amounts = Arrays.copyOf(amounts, n);
+        }
+        days[rowId] = (int) epochDay;
+        types[rowId] = (byte) type.ordinal();
+        amounts[rowId] = amountMinor;
+        rows = Math.max(rows, rowId + 1);
+
+        List<String> seen = new ArrayList<>(4);
+        for (String w : subTypeWords(subTypeId)) {
+            if (hasLetter(w)) index(w, rowId, seen);
+        }
+        for (String w : words(name)) {
+            if (hasLetter(w)) index(w, rowId, seen);
+        }
+    }
+
+    void finishBuild() {
+        for (Postings p : postings.values()) Arrays.sort(p.ids, 0, p.size);
+    }
+
+    private void index(String word, int rowId, List<String> seen) {
+        if (seen.contains(word)) return;
+        seen.add(word);
+        Postings p = postings.get(word);
+        if (p == null) {
+            p = new Postings();
+            postings.put(word, p);
+            sorted = null;
+        }
+        p.add(rowId);
+    }
+
+    private String[] subTypeWords(int subTypeId) {
+        return subTypeWords.computeIfAbsent(subTypeId,
+                id -> words(subTypes.name(id)).toArray(String[]::new));
+    }
+
+    // ==========================
+    //           ПОИСК
+    // ==========================
+    // Строки, в которых каждое из слов (с буквой) — начало какого-нибудь слова
+    BitSet lookup(List<String> prefixes) {
+        BitSet result = null;
+        for (String prefix : prefixes) {
+            BitSet rows = lookup(prefix);
+            if (result == null) result = rows;
+            else result.and(rows);
+            if (result.isEmpty()) break;
+        }
+        return result == null ? new BitSet() : result;
+    }
+
+    private BitSet lookup(String prefix) {
+        if (sorted == null) {
+            sorted = postings.keySet().toArray(String[]::new);
+            Arrays.sort(sorted);
+        }
+        BitSet result = new BitSet(rows);
+        int at = Arrays.binarySearch(sorted, prefix);
+        if (at < 0) at = -at - 1;
+        for (; at < sorted.length && sorted[at].startsWith(prefix); at++) {
+            Postings p = postings.get(sorted[at]);
+            for (int i = 0; i < p.size; i++) result.set(p.ids[i]);
+        }
+        return result;
+    }
+
+    // Период, тип и сумма строки
+    boolean matches(int rowId, OperationQuery q) {
+        return q.matches(days[rowId], TYPES[types[rowId]], amounts[rowId]);
+    }
+
+    // ==========================
+    //           СЛОВА
+    // ==========================
+    // Слова текста в нижнем регистре, ё -> е; разделители — всё, кроме букв и цифр
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder w = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                w.append(fold(c));
+            } else if (!w.isEmpty()) {
+                words.add(w.toString());
+                w.setLength(0);
+            }
+        }
+        if (!w.isEmpty()) words.add(w.toString());
+        return words;
+    }
+
+    static boolean hasLetter(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isLetter(word.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    // prefix — начало какого-нибудь слова подтипа
+    boolean subTypeStartsWord(int subTypeId, String prefix) {
+        for (String w : subTypeWords(subTypeId)) {
+            if (w.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    // Без разбиения на слова: на каждое начало слова в тексте примеряется prefix
+    static boolean startsWord(String text, String prefix) {
+        int last = text.length() - prefix.length();
+        for (int i = 0; i <= last; i++) {
+            if (i > 0 && Character.isLetterOrDigit(text.charAt(i - 1))) continue;
+            int j = 0;
+            while (j < prefix.length() && fold(text.charAt(i + j)) == prefix.charAt(j)) j++;
+            if (j == prefix.length()) return true;
+        }
+        return false;
+    }
+
+    private static char fold(char c) {
+        c = Character.toLowerCase(c);
+        return c == 'ё' ? 'е' : c;
+    }
+
+    // Номера строк по возрастанию
+    private static final class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+// Регулярная запись: операция (зарплата, аренда) раз в неделю или в месяц
+// либо бюджет на каждый месяц.
+// nextDue — дата ближайшего ещё не проведённого повторения; планировщик проводит все
+// повторения по сегодняшний день включительно и сдвигает её дальше.
+// Месячное повторение приходится на день anchorDay, в коротких месяцах — на последний день.
+public class RecurringRule {
+
+    public enum Kind { OPERATION, BUDGET }
+
+    public enum Period { WEEKLY, MONTHLY }
+
+    private final String id;
+    private final Kind kind;
+    private final Period period;
+    private final OperationType type;
+    private final SubTypeDictionary subTypes;
+    private final int subTypeId;
+    private final long amountMinor;
+    // название операции; у бюджета пустое
+    private final String name;
+    private final int anchorDay;
+    private LocalDate nextDue;
+
+    private RecurringRule(String id, Kind kind, Period period, OperationType type, SubTypeDictionary subTypes,
+                          int subTypeId, long amountMinor, String name, int anchorDay, LocalDate nextDue) {
+        this.id = id;
+        this.kind = kind;
+        this.period = period;
+        this.type = type;
+        this.subTypes = subTypes;
+        this.subTypeId = subTypeId;
+        this.amountMinor = amountMinor;
+        this.name = name;
+        this.anchorDay = anchorDay;
+        this.nextDue = nextDue;
+    }
+
+    // Операция с первым повторением start
+    public static RecurringRule operation(String id, Period period, OperationType type, SubTypeDictionary subTypes,
+                                          String subType, long amountMinor, String name, LocalDate start) {
+        return new RecurringRule(id, Kind.OPERATION, period, type, subTypes, subTypes.idOf(subType),
+                amountMinor, name, start.getDayOfMonth(), start);
+    }
+
+    // Бюджет на каждый месяц, начиная с first; заводится в первый день месяца
+    public static RecurringRule budget(String id, OperationType type, SubTypeDictionary subTypes, String subType,
+                                       long limitMinor, YearMonth first) {
+        return new RecurringRule(id, Kind.BUDGET, Period.MONTHLY, type, subTypes, subTypes.idOf(subType),
+                limitMinor, "", 1, first.atDay(1));
+    }
+
+    // Восстановление из хранилища
+    public static RecurringRule of(String id, Kind kind, Period period, OperationType type,
+                                   SubTypeDictionary subTypes, int subTypeId, long amountMinor, String name,
+                                   int anchorDay, LocalDate nextDue) {
+        return new RecurringRule(id, kind, period, type, subTypes, subTypeId, amountMinor, name, anchorDay, nextDue);
+    }
+
+    public String getId() { return id; }
+    public Kind getKind() { return kind; }
+    public Period getPeriod() { return period; }
+    public OperationType getType() { return type; }
+    public String getSubType() { return subTypes.name(subTypeId); }
+    public int getSubTypeId() { return subTypeId; }
+    public long getAmountMinor() { return amountMinor; }
+    public String getName() { return name; }
+    public int getAnchorDay() { return anchorDay; }
+    public LocalDate getNextDue() { return nextDue; }
+
+    public boolean isDue(LocalDate today) {
+        return !nextDue.isAfter(today);
+    }
+
+    // Операция очередного повторения
+    public Operation nextOperation() {
+        return Operation.ofMinor(subTypes, type, subTypeId, amountMinor, name, nextDue);
+    }
+
+    // Бюджет на месяц очередного повторения
+    public BudgetItem nextBudget() {
+        return BudgetItem.ofMinor(subTypes, type, subTypeId, YearMonth.from(nextDue), amountMinor);
+    }
+
+    // Переходит к следующему повторению
+    public void advance() {
+        if (period == Period.WEEKLY) {
+            nextDue = nextDue.plusWeeks(1);
+        } else {
+            YearMonth next = YearMonth.from(nextDue).plusMonths(1);
+            nextDue = next.atDay(Math.min(anchorDay, next.lengthOfMonth()));
+        }
+    }
+
+    @Override
+    public String toString() {
+        String every = period == Period.WEEKLY ? "еженедельно" : "ежемесячно";
+        String what = kind == Kind.BUDGET
+                ? "бюджет | " + type + " | " + getSubType() + " | лимит: " + Money.format(amountMinor)
+                : type + " | " + getSubType() + " | " + Money.format(amountMinor) + " | " + name;
+        return what + " | " + every + " | следующее: " + nextDue;
+    }
+}
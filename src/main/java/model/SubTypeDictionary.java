@@ -0,0 +1,58 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Словарь подтипов (категорий): подтип без учёта регистра -> целый номер.
+// Операции и бюджеты хранят номер, поэтому сравнение категорий — сравнение int,
+// а строка каждой категории лежит в памяти один раз.
+// Отображаемое имя — написание, с которым категория встретилась впервые.
+//
+// У каждого хранилища свой словарь (DataStore.getSubTypes). Операции, бюджеты и правила
+// держат ссылку на словарь, выдавший их номер, и берут из него название.
+public final class SubTypeDictionary {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private volatile int size;
+
+    // Номер подтипа; новый подтип добавляется в словарь
+    public int idOf(String subType) {
+        String key = fold(subType);
+        Integer id = ids.get(key);
+        return id != null ? id : register(key, subType);
+    }
+
+    // Номер подтипа или -1, если такого подтипа ещё не было
+    public int find(String subType) {
+        Integer id = ids.get(fold(subType));
+        return id == null ? -1 : id;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private synchronized int register(String key, String subType) {
+        Integer existing = ids.get(key);
+        if (existing != null) return existing;
+
+        int id = size;
+        String[] current = names;
+        if (id == current.length) current = Arrays.copyOf(current, id * 2);
+        current[id] = subType;
+        names = current;
+        size = id + 1;
+        ids.put(key, id);
+        return id;
+    }
+
+    private static String fold(String subType) {
+        return subType.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,36 @@
+package model;
+
+import java.time.LocalDate;
+
+// Перевод между пользователями: одна запись журнала с обеими проводками.
+// Повтор с тем же id от того же отправителя не применяется второй раз.
+public class Transfer {
+    private final String id;
+    private final String from;
+    private final String to;
+    private final long amountMinor;
+    private final LocalDate date;
+
+    public Transfer(String id, String from, String to, long amountMinor, LocalDate date) {
+        this.id = id;
+        this.from = from;
+        this.to = to;
+        this.amountMinor = amountMinor;
+        this.date = date;
+    }
+
+    public String getId() { return id; }
+    public String getFrom() { return from; }
+    public String getTo() { return to; }
+    public long getAmountMinor() { return amountMinor; }
+    public LocalDate getDate() { return date; }
+
+    // Проводки с подтипами из словаря subTypes
+    public Operation debit(SubTypeDictionary subTypes) {
+        return Operation.ofMinor(subTypes, OperationType.EXPENSE, "перевод " + to, amountMinor, "Перевод", date);
+    }
+
+    public Operation credit(SubTypeDictionary subTypes) {
+        return Operation.ofMinor(subTypes, OperationType.INCOME, "перевод от " + from, amountMinor, "Перевод", date);
+    }
+}
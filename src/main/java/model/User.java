@@ -1,41 +1,154 @@
 package model;
 
-import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.*;
 
-public class User implements Serializable {
+public class User {
     private String login;
-    private String passwordHash;
-    private final List<Operation> operations = new ArrayList<>();
-    private final List<BudgetItem> budgets = new ArrayList<>();
+    // volatile — меняется при пересчёте хэша, читается при входе без блокировки
+    private volatile String passwordHash;
+    // словарь подтипов хранилища, которому принадлежит пользователь
+    private final SubTypeDictionary subTypes;
+    private final OperationLog operations;
+    private final BudgetRegistry budgets = new BudgetRegistry();
+    // итоги по месяцам (тип, номер подтипа -> сумма) с кэшем неизменяемого снимка;
+    // пополняются в addOperation, поэтому при загрузке строятся заново
+    private final TreeMap<YearMonth, MonthlyRollup.Accumulator> months = new TreeMap<>();
+    // текущий баланс в копейках, ведётся в addOperation;
+    // volatile — читается без блокировки пользователя
+    private volatile long balanceMinor;
+    // номера подтипов из subTypes, встречавшихся в операциях и бюджетах
+    private final BitSet subTypeIds = new BitSet();
+    // регулярные операции и бюджеты в порядке добавления
+    private final List<RecurringRule> rules = new ArrayList<>();
 
-    public User(String login, String passwordHash) {
+    public User(String login, String passwordHash, SubTypeDictionary subTypes) {
         this.login = login;
         this.passwordHash = passwordHash;
+        this.subTypes = subTypes;
+        this.operations = new OperationLog(subTypes);
     }
 
     public String getLogin() { return login; }
     public String getPasswordHash() { return passwordHash; }
-    public List<Operation> getOperations() { return operations; }
-    public List<BudgetItem> getBudgets() { return budgets; }
+    public void setPasswordHash(String passwordHash) { this.passwordHash = passwordHash; }
+    public OperationLog getOperations() { return operations; }
+    public BudgetRegistry getBudgets() { return budgets; }
+    public SubTypeDictionary getSubTypes() { return subTypes; }
 
-    public void addOperation(Operation o) { operations.add(o); }
-    public void addBudget(BudgetItem b) { budgets.add(b); }
+    public void addOperation(Operation o) {
+        operations.add(o);
+        months.computeIfAbsent(YearMonth.from(o.getDate()), m -> new MonthlyRollup.Accumulator())
+                .add(o.getType(), o.getSubTypeId(), o.getAmountMinor());
+        balanceMinor += signedMinor(o);
+        subTypeIds.set(o.getSubTypeId());
+    }
+
+    public long getTotalMinor(OperationType type, String subType, YearMonth month) {
+        int id = subTypes.find(subType);
+        return id < 0 ? 0 : getTotalMinor(type, id, month);
+    }
+
+    public long getTotalMinor(OperationType type, int subTypeId, YearMonth month) {
+        MonthlyRollup.Accumulator m = months.get(month);
+        return m == null ? 0 : m.total(type, subTypeId);
+    }
+
+    // Итоги месяца; снимок кэшируется до следующей операции за этот месяц
+    public MonthlyRollup getRollup(YearMonth month) {
+        MonthlyRollup.Accumulator m = months.get(month);
+        return m == null ? MonthlyRollup.empty(month) : m.snapshot(month);
+    }
+
+    // Итоги месяцев с операциями в периоде [from, to] (null — без границы), по возрастанию.
+    // Полные месяцы берутся из кэша, неполные месяцы на границах считаются по операциям.
+    public List<MonthlyRollup> getRollups(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) return List.of();
+
+        NavigableMap<YearMonth, MonthlyRollup.Accumulator> span = months;
+        if (from != null) span = span.tailMap(YearMonth.from(from), true);
+        if (to != null) span = span.headMap(YearMonth.from(to), true);
+
+        List<MonthlyRollup> result = new ArrayList<>(span.size());
+        for (Map.Entry<YearMonth, MonthlyRollup.Accumulator> e : span.entrySet()) {
+            YearMonth ym = e.getKey();
+            boolean partial = from != null && from.isAfter(ym.atDay(1))
+                    || to != null && to.isBefore(ym.atEndOfMonth());
+            result.add(partial ? MonthlyRollup.of(operations, ym, from, to) : e.getValue().snapshot(ym));
+        }
+        return result;
+    }
+
+    // false, если бюджет на этот тип, подтип и месяц уже есть
+    public boolean addBudget(BudgetItem b) {
+        if (!budgets.add(b)) return false;
+        subTypeIds.set(b.getSubTypeId());
+        return true;
+    }
+
+    public BudgetItem findBudget(OperationType type, int subTypeId, YearMonth month) {
+        return budgets.find(type, subTypeId, month);
+    }
+
+    // Отмечает уже пройденные пороги бюджетов, чтобы после загрузки уведомления не повторялись
+    public void primeBudgetAlerts() {
+        for (BudgetItem b : budgets) {
+            b.setAlertLevel(b.thresholdsReached(getTotalMinor(b.getType(), b.getSubTypeId(), b.getMonth())));
+        }
+    }
+
+    // false, если правило с таким id уже есть
+    public boolean addRule(RecurringRule r) {
+        if (findRule(r.getId()) != null) return false;
+        rules.add(r);
+        subTypeIds.set(r.getSubTypeId());
+        return true;
+    }
+
+    // Удалённое правило или null
+    public RecurringRule removeRule(String id) {
+        RecurringRule r = findRule(id);
+        if (r != null) rules.remove(r);
+        return r;
+    }
+
+    public RecurringRule findRule(String id) {
+        for (RecurringRule r : rules) {
+            if (r.getId().equals(id)) return r;
+        }
+        return null;
+    }
+
+    public List<RecurringRule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    // Ближайшая дата повторения среди правил; null, если правил нет
+    public LocalDate nextRuleDue() {
+        LocalDate next = null;
+        for (RecurringRule r : rules) {
+            if (next == null || r.getNextDue().isBefore(next)) next = r.getNextDue();
+        }
+        return next;
+    }
 
     public double getBalance() {
-        double income = operations.stream()
-                .filter(o -> o.getType() == OperationType.INCOME)
-                .mapToDouble(Operation::getAmount).sum();
-        double expense = operations.stream()
-                .filter(o -> o.getType() == OperationType.EXPENSE)
-                .mapToDouble(Operation::getAmount).sum();
-        return income - expense;
+        return Money.toMajor(balanceMinor);
+    }
+
+    public long getBalanceMinor() {
+        return balanceMinor;
+    }
+
+    private static long signedMinor(Operation o) {
+        return o.getType() == OperationType.INCOME ? o.getAmountMinor() : -o.getAmountMinor();
     }
 
     public Set<String> getAllSubTypes() {
         Set<String> subs = new HashSet<>();
-        for (BudgetItem b : budgets) subs.add(b.getSubType());
-        for (Operation o : operations) subs.add(o.getSubType());
+        for (int id = subTypeIds.nextSetBit(0); id >= 0; id = subTypeIds.nextSetBit(id + 1)) subs.add(subTypes.name(id));
         return subs;
     }
+
 }
\ No newline at end of file
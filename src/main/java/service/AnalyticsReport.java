@@ -0,0 +1,52 @@
+package service;
+
+import model.Money;
+
+import java.time.YearMonth;
+import java.util.List;
+
+// Итоги по всем пользователям: суммы по месяцам, категории расходов, превышения лимитов.
+// Суммы в копейках.
+public class AnalyticsReport {
+
+    public record MonthTotals(YearMonth month, long incomeMinor, long expenseMinor, int overruns) {}
+
+    public record CategoryTotal(String subType, long expenseMinor) {}
+
+    private final int users;
+    private final List<MonthTotals> months;
+    private final List<CategoryTotal> categories;
+    private final int overruns;
+
+    AnalyticsReport(int users, List<MonthTotals> months, List<CategoryTotal> categories, int overruns) {
+        this.users = users;
+        this.months = List.copyOf(months);
+        this.categories = List.copyOf(categories);
+        this.overruns = overruns;
+    }
+
+    public int getUsers() { return users; }
+
+    // По возрастанию месяца
+    public List<MonthTotals> getMonths() { return months; }
+
+    // Категории по убыванию расходов
+    public List<CategoryTotal> getTopCategories(int n) {
+        return categories.subList(0, Math.min(n, categories.size()));
+    }
+
+    // Бюджеты расходов, в которых потрачено не меньше лимита
+    public int getOverruns() { return overruns; }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Пользователей: ").append(users).append(", превышений лимита: ").append(overruns).append('\n');
+        for (MonthTotals m : months) {
+            sb.append(m.month()).append(": доходы ").append(Money.format(m.incomeMinor()))
+                    .append(", расходы ").append(Money.format(m.expenseMinor()))
+                    .append(", превышений ").append(m.overruns()).append('\n');
+        }
+        return sb.toString();
+    }
+}
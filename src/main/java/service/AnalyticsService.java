@@ -0,0 +1,132 @@
+package service;
+
+import model.*;
+import storage.DataStore;
+import storage.UserLocks;
+
+import java.time.YearMonth;
+import java.util.*;
+
+// Сводная аналитика по всем пользователям хранилища.
+//
+// Пользователи обходятся параллельным потоком, незагруженные читаются из снимка. Каждый поток
+// копит частичные итоги в Partial, в конце они сливаются. Данные пользователя
+// читаются под его блокировкой. Суммы берутся из итогов месяцев (MonthlyRollup):
+// отчёт стоит O(месяцев) на пользователя, по операциям проходят только неполные месяцы на границах периода.
+public class AnalyticsService {
+    private static final int INCOME = 0, EXPENSE = 1, OVERRUNS = 2;
+
+    private final DataStore store;
+    private final UserLocks locks;
+
+    public AnalyticsService(DataStore store) {
+        this.store = store;
+        this.locks = store.getLocks();
+    }
+
+    public AnalyticsReport report() {
+        return report(ReportFilter.all());
+    }
+
+    public AnalyticsReport report(ReportFilter filter) {
+        if (locks.isHeldByCurrentThread())
+            throw new IllegalStateException("Аналитика вызвана под блокировкой пользователя");
+
+        Partial total = store.getLogins().parallelStream()
+                .map(store::getUser)
+                .filter(Objects::nonNull)
+                .collect(() -> new Partial(filter), Partial::add, Partial::merge);
+        return total.toReport();
+    }
+
+    // ==========================
+    //     ЧАСТИЧНЫЕ ИТОГИ
+    // ==========================
+    private final class Partial {
+        private final ReportFilter filter;
+        private final boolean income;
+        private final boolean expense;
+        // месяц -> [доходы, расходы, превышения]
+        private final Map<YearMonth, long[]> months = new HashMap<>();
+        // расходы по номеру подтипа
+        private long[] categories = new long[64];
+        private int users;
+        private int overruns;
+
+        Partial(ReportFilter filter) {
+            this.filter = filter;
+            this.income = filter.getTypes().contains(OperationType.INCOME);
+            this.expense = filter.getTypes().contains(OperationType.EXPENSE);
+        }
+
+        void add(User u) {
+            locks.lock(u.getLogin());
+            try {
+                users++;
+                for (MonthlyRollup r : u.getRollups(filter.getFrom(), filter.getTo())) add(r);
+
+                for (BudgetItem b : u.getBudgets()) {
+                    if (b.getType() != OperationType.EXPENSE || !filter.matches(b.getType(), b.getMonth())) continue;
+                    if (u.getTotalMinor(b.getType(), b.getSubTypeId(), b.getMonth()) >= b.getLimitMinor()) {
+                        overruns++;
+                        slot(b.getMonth())[OVERRUNS]++;
+                    }
+                }
+            } finally {
+                locks.unlock(u.getLogin());
+            }
+        }
+
+        private void add(MonthlyRollup r) {
+            long in = income ? r.getIncomeMinor() : 0;
+            long out = expense ? r.getExpenseMinor() : 0;
+            if (in == 0 && out == 0) return;
+
+            long[] slot = slot(r.getMonth());
+            slot[INCOME] += in;
+            if (out == 0) return;
+
+            slot[EXPENSE] += out;
+            r.forEach(OperationType.EXPENSE, (subTypeId, amountMinor) -> {
+                if (subTypeId >= categories.length) {
+                    categories = Arrays.copyOf(categories, Math.max(categories.length * 2, subTypeId + 1));
+                }
+                categories[subTypeId] += amountMinor;
+            });
+        }
+
+        private long[] slot(YearMonth ym) {
+            return months.computeIfAbsent(ym, m -> new long[3]);
+        }
+
+        void merge(Partial other) {
+            users += other.users;
+            overruns += other.overruns;
+            for (Map.Entry<YearMonth, long[]> e : other.months.entrySet()) {
+                long[] mine = slot(e.getKey());
+                for (int i = 0; i < mine.length; i++) mine[i] += e.getValue()[i];
+            }
+            if (other.categories.length > categories.length) {
+                categories = Arrays.copyOf(categories, other.categories.length);
+            }
+            for (int i = 0; i < other.categories.length; i++) categories[i] += other.categories[i];
+        }
+
+        AnalyticsReport toReport() {
+            List<AnalyticsReport.MonthTotals> monthList = new ArrayList<>(months.size());
+            for (Map.Entry<YearMonth, long[]> e : new TreeMap<>(months).entrySet()) {
+                long[] v = e.getValue();
+                monthList.add(new AnalyticsReport.MonthTotals(e.getKey(), v[INCOME], v[EXPENSE], (int) v[OVERRUNS]));
+            }
+
+            SubTypeDictionary dict = store.getSubTypes();
+            List<AnalyticsReport.CategoryTotal> categoryList = new ArrayList<>();
+            for (int id = 0; id < categories.length; id++) {
+                if (categories[id] > 0) categoryList.add(new AnalyticsReport.CategoryTotal(dict.name(id), categories[id]));
+            }
+            categoryList.sort(Comparator.comparingLong(AnalyticsReport.CategoryTotal::expenseMinor).reversed());
+
+            return new AnalyticsReport(users, monthList, categoryList, overruns);
+        }
+    }
+}
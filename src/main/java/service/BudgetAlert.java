@@ -0,0 +1,32 @@
+package service;
+
+import model.BudgetItem;
+
+import java.time.YearMonth;
+
+// Пройден порог бюджета расходов: 80% лимита или сам лимит
+public class BudgetAlert {
+
+    public enum Level { WARNING, EXCEEDED }
+
+    private final String login;
+    private final BudgetItem budget;
+    private final long limitMinor;
+    private final long spentMinor;
+    private final Level level;
+
+    BudgetAlert(String login, BudgetItem budget, long spentMinor, Level level) {
+        this.login = login;
+        this.budget = budget;
+        this.limitMinor = budget.getLimitMinor();
+        this.spentMinor = spentMinor;
+        this.level = level;
+    }
+
+    public String getLogin() { return login; }
+    public String getSubType() { return budget.getSubType(); }
+    public YearMonth getMonth() { return budget.getMonth(); }
+    public long getLimitMinor() { return limitMinor; }
+    public long getSpentMinor() { return spentMinor; }
+    public Level getLevel() { return level; }
+}
@@ -0,0 +1,73 @@
+package service;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import model.*;
+
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+// Уведомления о бюджетах расходов.
+//
+// Бюджет находится по индексу пользователя (тип, подтип, месяц), потраченная сумма —
+// из ведомых итогов User, поэтому проверка после операции не зависит от длины истории.
+// Пройденный порог запоминается в бюджете: каждое уведомление приходит один раз.
+// Если лимит подняли и расход снова ниже порога, порог можно пройти заново.
+public class BudgetAlertEngine {
+    // проверка лимитов после проводки
+    private static final LatencyHistogram CHECK_TIME = Metrics.shared().histogram("service.checkLimit");
+    private static final LongAdder WARNINGS = Metrics.shared().counter("alerts.warning");
+    private static final LongAdder EXCEEDED = Metrics.shared().counter("alerts.exceeded");
+
+    private final List<BudgetAlertListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(BudgetAlertListener l) { listeners.add(l); }
+    public void removeListener(BudgetAlertListener l) { listeners.remove(l); }
+
+    // Вызывается под блокировкой пользователя, после того как операция добавлена
+    public void onPosted(User u, Operation op) {
+        if (op.getType() != OperationType.EXPENSE) return;
+        long start = System.nanoTime();
+        BudgetItem b = u.findBudget(OperationType.EXPENSE, op.getSubTypeId(), YearMonth.from(op.getDate()));
+        if (b != null) evaluate(u, b);
+        CHECK_TIME.recordSince(start);
+    }
+
+    // Пачка операций и новых бюджетов: бюджет проверяется один раз,
+    // даже если он сам новый и операции пачки тоже в него попали
+    public void onBatch(User u, Collection<Operation> ops, Collection<BudgetItem> budgets) {
+        long start = System.nanoTime();
+        Set<BudgetItem> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BudgetItem b : budgets) {
+            if (b.getType() == OperationType.EXPENSE) touched.add(b);
+        }
+        for (Operation op : ops) {
+            if (op.getType() != OperationType.EXPENSE) continue;
+            BudgetItem b = u.findBudget(OperationType.EXPENSE, op.getSubTypeId(), YearMonth.from(op.getDate()));
+            if (b != null) touched.add(b);
+        }
+        for (BudgetItem b : touched) evaluate(u, b);
+        CHECK_TIME.recordSince(start);
+    }
+
+    // Новый бюджет или изменённый лимит: проверяется только этот бюджет
+    public void onBudgetChanged(User u, BudgetItem b) {
+        if (b.getType() != OperationType.EXPENSE) return;
+        if (u.findBudget(b.getType(), b.getSubTypeId(), b.getMonth()) == b) evaluate(u, b);
+    }
+
+    private void evaluate(User u, BudgetItem b) {
+        long spent = u.getTotalMinor(OperationType.EXPENSE, b.getSubTypeId(), b.getMonth());
+        int level = b.thresholdsReached(spent);
+        int previous = b.getAlertLevel();
+        b.setAlertLevel(level);
+        if (level <= previous) return;
+
+        BudgetAlert alert = new BudgetAlert(u.getLogin(), b, spent,
+                level == 2 ? BudgetAlert.Level.EXCEEDED : BudgetAlert.Level.WARNING);
+        (level == 2 ? EXCEEDED : WARNINGS).increment();
+        for (BudgetAlertListener l : listeners) l.onAlert(alert);
+    }
+}
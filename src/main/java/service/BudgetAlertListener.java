@@ -0,0 +1,7 @@
+package service;
+
+// Вызывается под блокировкой пользователя — обработчик не должен надолго задерживать поток
+@FunctionalInterface
+public interface BudgetAlertListener {
+    void onAlert(BudgetAlert alert);
+}
@@ -0,0 +1,61 @@
+package service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Недавно проверенные пароли: повторный вход не пересчитывает PBKDF2.
+//
+// Пароль не хранится: запоминается HMAC-SHA256 от (хэш из хранилища, пароль)
+// на случайном ключе процесса. Смена хэша в хранилище делает запись недействительной.
+// Хранится не больше CAPACITY пользователей, вытесняются давно не входившие.
+class CredentialCache {
+    private static final int CAPACITY = 4096;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final Map<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    CredentialCache() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        key = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    boolean matches(String login, String stored, String password) {
+        byte[] expected;
+        synchronized (entries) {
+            expected = entries.get(login);
+        }
+        return expected != null && MessageDigest.isEqual(expected, mac(stored, password));
+    }
+
+    void remember(String login, String stored, String password) {
+        byte[] tag = mac(stored, password);
+        synchronized (entries) {
+            entries.put(login, tag);
+        }
+    }
+
+    private byte[] mac(String stored, String password) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            mac.update(stored.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC недоступен", e);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package service;
+
+import exceptions.ValidationException;
+import model.Money;
+import model.Operation;
+import model.OperationType;
+import model.SubTypeDictionary;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+// Чтение операций из CSV в формате раздела «ОПЕРАЦИИ» отчёта:
+// Дата,Тип,Подтип,Сумма,Название.
+//
+// Два прохода, чтобы память не зависела от длины файла, а файл с ошибкой ничего не менял.
+// read читает файл порциями по CHUNK записей, каждую порцию разбирает и проверяет параллельно
+// и дописывает разобранные записи во временный файл. forEachChunk читает их оттуда теми же
+// порциями уже как Operation — только тогда подтипы попадают в словарь.
+// В памяти одновременно лежит одна порция.
+public class CsvOperationReader implements Closeable {
+    private static final int CHUNK = 1 << 16;
+    private static final String SECTION = "=== ОПЕРАЦИИ ===";
+    private static final String HEADER = "Дата,";
+    private static final OperationType[] TYPES = OperationType.values();
+
+    // Порция операций; список действителен только до возврата
+    public interface ChunkConsumer {
+        void accept(List<Operation> ops);
+    }
+
+    // Разобранная запись: подтип ещё не заведён в словаре
+    private record Row(LocalDate date, OperationType type, String subType, long amountMinor, String name) {}
+
+    private final Path spill;
+    private final int size;
+
+    private CsvOperationReader(Path spill, int size) {
+        this.spill = spill;
+        this.size = size;
+    }
+
+    // Первый проход: при первой ошибке бросается исключение с номером строки
+    public static CsvOperationReader read(Path file) throws IOException, ValidationException {
+        Path spill = Files.createTempFile("finapp-import", ".bin");
+        int size = 0;
+
+        try (BufferedReader in = new BufferedReader(
+                     Files.newBufferedReader(file, StandardCharsets.UTF_8), 1 << 16);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(spill), 1 << 16))) {
+
+            List<String> chunk = new ArrayList<>(CHUNK);
+            List<Integer> lineNumbers = new ArrayList<>(CHUNK);
+            int lineNo = 0;
+            boolean inReport = false;
+            boolean started = false;
+            boolean expectHeader = true;
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+
+                // полный отчёт: пропускаем всё до раздела операций
+                if (!started) {
+                    if (line.startsWith("===")) inReport = true;
+                    if (inReport) {
+                        started = line.equals(SECTION);
+                        continue;
+                    }
+                    started = true;
+                }
+                if (line.isBlank()) {
+                    if (inReport) break;
+                    continue;
+                }
+                if (expectHeader) {
+                    expectHeader = false;
+                    if (line.startsWith(HEADER)) continue;
+                }
+
+                // поле в кавычках может содержать перевод строки
+                int recordLine = lineNo;
+                String record = line;
+                while (hasOpenQuote(record)) {
+                    String next = in.readLine();
+                    if (next == null) break;
+                    lineNo++;
+                    record = record + "\n" + next;
+                }
+
+                chunk.add(record);
+                lineNumbers.add(recordLine);
+                if (chunk.size() == CHUNK) {
+                    size += parseChunk(chunk, lineNumbers, out);
+                    chunk.clear();
+                    lineNumbers.clear();
+                }
+            }
+            size += parseChunk(chunk, lineNumbers, out);
+        } catch (IOException | ValidationException | RuntimeException e) {
+            Files.deleteIfExists(spill);
+            throw e;
+        }
+        return new CsvOperationReader(spill, size);
+    }
+
+    private static int parseChunk(List<String> chunk, List<Integer> lineNumbers, DataOutputStream out)
+            throws IOException, ValidationException {
+        Row[] parsed = new Row[chunk.size()];
+        String[] errors = new String[chunk.size()];
+
+        IntStream.range(0, chunk.size()).parallel().forEach(i -> {
+            try {
+                parsed[i] = parse(chunk.get(i));
+            } catch (ValidationException | RuntimeException e) {
+                errors[i] = e.getMessage();
+            }
+        });
+
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null)
+                throw new ValidationException("Строка " + lineNumbers.get(i) + ": " + errors[i]);
+        }
+        for (Row r : parsed) {
+            out.writeLong(r.date().toEpochDay());
+            out.writeByte(r.type().ordinal());
+            out.writeLong(r.amountMinor());
+            writeString(out, r.subType());
+            writeString(out, r.name());
+        }
+        return parsed.length;
+    }
+
+    // Число проверенных операций
+    public int size() { return size; }
+
+    // Второй проход: операции порциями по CHUNK в порядке файла, подтипы — из словаря subTypes
+    public void forEachChunk(SubTypeDictionary subTypes, ChunkConsumer consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(spill), 1 << 16))) {
+            List<Operation> chunk = new ArrayList<>(CHUNK);
+            for (int i = 0; i < size; i++) {
+                LocalDate date = LocalDate.ofEpochDay(in.readLong());
+                OperationType type = TYPES[in.readByte()];
+                long amountMinor = in.readLong();
+                String subType = readString(in);
+                chunk.add(Operation.ofMinor(subTypes, type, subType, amountMinor, readString(in), date));
+                if (chunk.size() == CHUNK) {
+                    consumer.accept(chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) consumer.accept(chunk);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(spill);
+    }
+
+    // writeUTF не подходит: поле CSV может быть длиннее 64 КБ
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ==========================
+    //          РАЗБОР
+    // ==========================
+    private static Row parse(String record) throws ValidationException {
+        List<String> f = fields(record);
+        if (f.size() != 5)
+            throw new ValidationException("ожидается 5 полей, найдено " + f.size());
+
+        LocalDate date;
+        try {
+            date = LocalDate.parse(f.get(0).trim());
+        } catch (DateTimeParseException e) {
+            throw new ValidationException("некорректная дата " + f.get(0));
+        }
+
+        OperationType type;
+        try {
+            type = OperationType.valueOf(f.get(1).trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("тип должен быть INCOME или EXPENSE");
+        }
+
+        long amount;
+        try {
+            amount = Money.parseMinor(f.get(3).trim());
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new ValidationException("некорректная сумма " + f.get(3));
+        }
+        if (amount <= 0)
+            throw new ValidationException("Сумма должна быть больше нуля");
+
+        String subType = f.get(2);
+        String name = f.get(4);
+
+        if (subType.isBlank())
+            throw new ValidationException("Подтип не может быть пустым");
+
+        return new Row(date, type, subType, amount, name);
+    }
+
+    static List<String> fields(String record) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                        cur.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    cur.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        fields.add(cur.toString());
+        return fields;
+    }
+
+    private static boolean hasOpenQuote(String record) {
+        int quotes = 0;
+        for (int i = 0; i < record.length(); i++) {
+            if (record.charAt(i) == '"') quotes++;
+        }
+        return quotes % 2 != 0;
+    }
+}
@@ -0,0 +1,140 @@
+package service;
+
+import model.BudgetItem;
+import model.Money;
+import model.Operation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+// Потоковая запись отчёта: строки не собираются в память, поля пишутся
+// прямо в буфер. Числа и даты выводятся через общий char[] без лишних строк.
+// Текстовые поля экранируются по правилам CSV.
+public class CsvReportWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer out;
+    private final char[] digits = new char[24];
+
+    // Поток закрывается вместе с отчётом
+    public CsvReportWriter(OutputStream stream) {
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    public void line(String text) throws IOException {
+        out.write(text);
+        out.write('\n');
+    }
+
+    public void budgetRow(BudgetItem b, long factMinor) throws IOException {
+        out.write(b.getType().name());
+        out.write(',');
+        text(b.getSubType());
+        out.write(',');
+        month(b.getMonth());
+        out.write(',');
+        money(b.getLimitMinor());
+        out.write(',');
+        money(factMinor);
+        out.write(',');
+        money(b.getLimitMinor() - factMinor);
+        out.write('\n');
+    }
+
+    public void monthRow(YearMonth m, long incomeMinor, long expenseMinor) throws IOException {
+        month(m);
+        out.write(',');
+        money(incomeMinor);
+        out.write(',');
+        money(expenseMinor);
+        out.write(',');
+        money(incomeMinor - expenseMinor);
+        out.write('\n');
+    }
+
+    public void operationRow(Operation o) throws IOException {
+        date(o.getDate());
+        out.write(',');
+        out.write(o.getType().name());
+        out.write(',');
+        text(o.getSubType());
+        out.write(',');
+        money(o.getAmountMinor());
+        out.write(',');
+        text(o.getName());
+        out.write('\n');
+    }
+
+    // ==========================
+    //          ПОЛЯ
+    // ==========================
+    private void text(String s) throws IOException {
+        if (!needsQuotes(s)) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static boolean needsQuotes(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') return true;
+        }
+        return false;
+    }
+
+    // 12345 -> "123.45", как Money.format
+    private void money(long minor) throws IOException {
+        if (minor < 0) {
+            out.write('-');
+            minor = -minor;
+        }
+        int pos = digits.length;
+        long cents = minor % Money.MINOR_PER_UNIT;
+        digits[--pos] = (char) ('0' + cents % 10);
+        digits[--pos] = (char) ('0' + cents / 10);
+        digits[--pos] = '.';
+        long units = minor / Money.MINOR_PER_UNIT;
+        do {
+            digits[--pos] = (char) ('0' + units % 10);
+            units /= 10;
+        } while (units > 0);
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    private void date(LocalDate d) throws IOException {
+        padded(d.getYear(), 4);
+        out.write('-');
+        padded(d.getMonthValue(), 2);
+        out.write('-');
+        padded(d.getDayOfMonth(), 2);
+    }
+
+    private void month(YearMonth m) throws IOException {
+        padded(m.getYear(), 4);
+        out.write('-');
+        padded(m.getMonthValue(), 2);
+    }
+
+    private void padded(int value, int width) throws IOException {
+        for (int i = width - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        out.write(digits, 0, width);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
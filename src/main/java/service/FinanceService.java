@@ -2,76 +2,221 @@ package service;
 
 import exceptions.AuthException;
 import exceptions.NotFoundException;
+import exceptions.StorageException;
 import exceptions.ValidationException;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 import model.*;
 import storage.DataStore;
+import storage.UserLocks;
 
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
+// Все изменения и чтения данных пользователя идут под его блокировкой из UserLocks,
+// поэтому один DataStore могут одновременно обслуживать несколько сессий.
 public class FinanceService {
+    private static final LatencyHistogram LOGIN_TIME = Metrics.shared().histogram("service.login");
+    private static final LatencyHistogram ADD_OPERATION_TIME = Metrics.shared().histogram("service.addOperation");
+    private static final LatencyHistogram IMPORT_TIME = Metrics.shared().histogram("service.importOperations");
+    private static final LatencyHistogram ACTUALS_TIME = Metrics.shared().histogram("service.getActualDifference");
+    private static final LatencyHistogram TRANSFER_TIME = Metrics.shared().histogram("service.transfer");
+    private static final LatencyHistogram EXPORT_TIME = Metrics.shared().histogram("service.exportFullReport");
+    private static final LatencyHistogram SEARCH_TIME = Metrics.shared().histogram("service.searchOperations");
+    private static final LatencyHistogram RECURRING_TIME = Metrics.shared().histogram("service.postDueRecurring");
+    private static final LongAdder RECURRING_POSTED = Metrics.shared().counter("recurring.posted");
+    // проведённые повторения, которые не удалось сразу записать в снимок
+    private static final LongAdder RECURRING_UNSAVED = Metrics.shared().counter("recurring.unsaved");
+    // первое повторение регулярной записи — не дальше стольких лет от сегодняшнего дня
+    private static final int RULE_START_YEARS = 1;
+    // за один проход правило проводит не больше стольких повторений, остальные — в следующих проходах
+    private static final int MAX_OCCURRENCES_PER_PASS = 100;
 
     private final DataStore store;
+    private final UserLocks locks;
+    private final BudgetAlertEngine alerts = new BudgetAlertEngine();
+    private final PasswordHasher hasher;
+    private final CredentialCache credentials = new CredentialCache();
+    // хэш для несуществующего логина: ответ занимает столько же времени, сколько при неверном пароле
+    private final String dummyHash;
 
     public FinanceService(DataStore store) {
+        this(store, new PasswordHasher());
+    }
+
+    public FinanceService(DataStore store, PasswordHasher hasher) {
         this.store = store;
+        this.locks = store.getLocks();
+        this.hasher = hasher;
+        this.dummyHash = hasher.hash("");
     }
 
     // ==========================
     //          АВТОРИЗАЦИЯ
     // ==========================
+    public User register(String login, String pass) throws ValidationException, StorageException {
+        if (login == null || login.isBlank())
+            throw new ValidationException("Логин не может быть пустым");
+        if (pass == null || pass.isEmpty())
+            throw new ValidationException("Пароль не может быть пустым");
+        if (store.hasUser(login))
+            throw new ValidationException("Пользователь уже существует");
+
+        User created = new User(login, hasher.hash(pass), store.getSubTypes());
+        User user;
+        locks.lock(login);
+        try {
+            user = store.addUser(created);
+        } finally {
+            locks.unlock(login);
+        }
+        if (user != created)
+            throw new ValidationException("Пользователь уже существует");
+
+        store.compactIfNeeded();
+        credentials.remember(login, created.getPasswordHash(), pass);
+        return user;
+    }
+
+    // Пароль, сохранённый без хэша или с другим числом итераций, пересчитывается
+    // при успешном входе и пишется в журнал
     public User login(String login, String pass) throws AuthException {
+        long start = System.nanoTime();
+        try {
+            return authenticate(login, pass);
+        } finally {
+            LOGIN_TIME.recordSince(start);
+        }
+    }
+
+    private User authenticate(String login, String pass) throws AuthException {
         User user = store.getUser(login);
 
         if (user == null) {
-            user = new User(login, pass);
-            store.addUser(user);
-            store.save();
-            return user;
+            hasher.verify(pass, dummyHash);
+            throw new AuthException("Неверный логин или пароль");
+        }
+
+        String stored = user.getPasswordHash();
+        if (credentials.matches(login, stored, pass)) return user;
+
+        if (!hasher.verify(pass, stored)) {
+            throw new AuthException("Неверный логин или пароль");
         }
 
-        if (!user.getPasswordHash().equals(pass)) {
-            throw new AuthException("Неверный пароль");
+        if (hasher.needsRehash(stored)) {
+            String rehashed = hasher.hash(pass);
+            locks.lock(login);
+            try {
+                if (user.getPasswordHash().equals(stored)) {
+                    user.setPasswordHash(rehashed);
+                    store.appendPassword(user);
+                }
+            } finally {
+                locks.unlock(login);
+            }
+            store.compactIfNeeded();
         }
 
+        credentials.remember(login, user.getPasswordHash(), pass);
         return user;
     }
 
     // ==========================
     //           БЮДЖЕТ
     // ==========================
+    public void addAlertListener(BudgetAlertListener l) {
+        alerts.addListener(l);
+    }
+
+    public void removeAlertListener(BudgetAlertListener l) {
+        alerts.removeListener(l);
+    }
+
     public void addBudget(User u, OperationType type, String subType, YearMonth month, double limit)
             throws ValidationException {
+        addBudgetMinor(u, type, subType, month, Money.toMinor(limit));
+    }
 
-        if (limit <= 0)
+    // Лимит в копейках
+    public void addBudgetMinor(User u, OperationType type, String subType, YearMonth month, long limitMinor)
+            throws ValidationException {
+
+        if (limitMinor <= 0)
             throw new ValidationException("Лимит должен быть больше нуля");
 
         if (subType == null || subType.isBlank())
             throw new ValidationException("Подтип не может быть пустым");
 
-        u.addBudget(new BudgetItem(type, subType, month, limit));
-        store.save();
+        BudgetItem b = BudgetItem.ofMinor(u.getSubTypes(), type, subType, month, limitMinor);
+        locks.lock(u.getLogin());
+        try {
+            if (!u.addBudget(b))
+                throw new ValidationException("Бюджет на эту категорию и месяц уже задан");
+            store.appendBudget(u, b);
+            alerts.onBudgetChanged(u, b);
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+        store.compactIfNeeded();
     }
 
     public List<BudgetItem> getBudgets(User u) {
-        return u.getBudgets();
+        locks.lock(u.getLogin());
+        try {
+            return u.getBudgets().toList();
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+    }
+
+    // Бюджеты одного месяца — из индекса по месяцам, без прохода по всем бюджетам
+    public List<BudgetItem> getBudgets(User u, YearMonth month) {
+        locks.lock(u.getLogin());
+        try {
+            return List.copyOf(u.getBudgets().month(month));
+        } finally {
+            locks.unlock(u.getLogin());
+        }
     }
 
+    // Бюджет ищется сначала среди расходов, затем среди доходов
     public void editBudget(User u, String subType, YearMonth month, double newLimit)
             throws NotFoundException, ValidationException {
+        editBudgetMinor(u, subType, month, Money.toMinor(newLimit));
+    }
+
+    public void editBudgetMinor(User u, String subType, YearMonth month, long limitMinor)
+            throws NotFoundException, ValidationException {
 
-        if (newLimit <= 0)
+        if (limitMinor <= 0)
             throw new ValidationException("Лимит должен быть больше нуля");
 
-        for (BudgetItem b : u.getBudgets()) {
-            if (b.getSubType().equalsIgnoreCase(subType) && b.getMonth().equals(month)) {
-                b.setLimit(newLimit);
-                store.save();
+        int subTypeId = u.getSubTypes().find(subType);
+
+        locks.lock(u.getLogin());
+        try {
+            BudgetItem b = u.findBudget(OperationType.EXPENSE, subTypeId, month);
+            if (b == null) b = u.findBudget(OperationType.INCOME, subTypeId, month);
+
+            if (b != null) {
+                b.setLimitMinor(limitMinor);
+                store.appendBudgetLimit(u, b);
+                alerts.onBudgetChanged(u, b);
                 return;
             }
+        } finally {
+            locks.unlock(u.getLogin());
+            store.compactIfNeeded();
         }
 
         throw new NotFoundException("Бюджет не найден");
@@ -81,155 +226,509 @@ public class FinanceService {
     //          ОПЕРАЦИИ
     // ==========================
     public void addOperation(User u, Operation op) throws ValidationException {
-        if (op.getAmount() <= 0)
+        validate(op);
+
+        long start = System.nanoTime();
+        locks.lock(u.getLogin());
+        try {
+            post(u, op);
+        } finally {
+            locks.unlock(u.getLogin());
+            ADD_OPERATION_TIME.recordSince(start);
+        }
+        store.compactIfNeeded();
+    }
+
+    private static void validate(Operation op) throws ValidationException {
+        if (op.getAmountMinor() <= 0)
             throw new ValidationException("Сумма должна быть больше нуля");
+    }
 
-        u.addOperation(op);
-        store.save();
-        checkLimit(u, op);
+    // Импорт операций из CSV (формат раздела «ОПЕРАЦИИ» отчёта).
+    // Файл сначала целиком проверяется: при ошибке в любой строке — ValidationException,
+    // и ни одна операция не добавляется. Затем операции порциями добавляются пользователю —
+    // память не зависит от длины файла. Каждый затронутый бюджет проверяется один раз,
+    // на диск всё попадает одним снимком. Возвращает число добавленных операций.
+    // StorageException — операции уже добавлены, но не сохранены на диск, или второй проход
+    // прервался и добавлена только часть (сколько — в сообщении); добавленное остаётся.
+    public int importOperations(User u, String filePath) throws ValidationException, StorageException {
+        try (CsvOperationReader rows = CsvOperationReader.read(Paths.get(filePath))) {
+            long start = System.nanoTime();
+            Set<BudgetItem> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+            int[] added = {0};
+            IOException interrupted = null;
+            locks.lock(u.getLogin());
+            try {
+                rows.forEachChunk(u.getSubTypes(), ops -> {
+                    for (Operation op : ops) {
+                        u.addOperation(op);
+                        added[0]++;
+                        if (op.getType() != OperationType.EXPENSE) continue;
+                        BudgetItem b = u.findBudget(op.getType(), op.getSubTypeId(), YearMonth.from(op.getDate()));
+                        if (b != null) touched.add(b);
+                    }
+                });
+            } catch (IOException e) {
+                interrupted = e;
+            } finally {
+                store.markChanged(u);
+                alerts.onBatch(u, List.of(), touched);
+                locks.unlock(u.getLogin());
+            }
+
+            // операции импорта не пишутся в журнал: без снимка сбой их потеряет.
+            // Прерванный импорт тоже сохраняется — на диске то же, что в памяти
+            boolean saved = store.save();
+            IMPORT_TIME.recordSince(start);
+            if (interrupted != null)
+                throw new StorageException("Импорт прерван: добавлено " + added[0] + " из " + rows.size()
+                        + " операций (" + interrupted.getMessage() + ")"
+                        + (saved ? "" : ". Добавленные операции не сохранены на диск: "
+                        + store.getLastFailure().getMessage()));
+            if (!saved)
+                throw new StorageException("Операции добавлены, но не сохранены на диск: "
+                        + store.getLastFailure().getMessage() + ". До следующего снимка они есть только в памяти");
+            return rows.size();
+        } catch (IOException | InvalidPathException e) {
+            throw new ValidationException("Не удалось прочитать файл: " + e.getMessage());
+        }
     }
 
-    private void checkLimit(User u, Operation op) {
-        if (op.getType() != OperationType.EXPENSE) return;
+    public List<Operation> getOperations(User u) {
+        locks.lock(u.getLogin());
+        try {
+            return u.getOperations().toList();
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+    }
 
-        YearMonth ym = YearMonth.from(op.getDate());
+    // Страница операций за период (границы включительно, null — без границы) по возрастанию даты
+    public List<Operation> getOperations(User u, LocalDate from, LocalDate to, int offset, int limit)
+            throws ValidationException {
 
-        Optional<BudgetItem> budget = u.getBudgets().stream()
-                .filter(b -> b.getMonth().equals(ym)
-                        && b.getSubType().equalsIgnoreCase(op.getSubType())
-                        && b.getType() == OperationType.EXPENSE)
-                .findFirst();
+        if (offset < 0 || limit < 0)
+            throw new ValidationException("Смещение и размер страницы не могут быть отрицательными");
 
-        if (budget.isPresent()) {
-            double limit = budget.get().getLimit();
-            double spent = getSpentByMonthAndSubType(u, op.getSubType(), ym);
-            double percent = spent / limit * 100;
+        locks.lock(u.getLogin());
+        try {
+            return u.getOperations().page(from, to, offset, limit);
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+    }
 
-            if (percent >= 100) {
-                System.out.println("⚠ Превышен лимит по категории " + op.getSubType() + " за " + ym + "!");
-            } else if (percent >= 80) {
-                System.out.println("⚠ Достигнуто 80% лимита по категории " + op.getSubType() + ".");
-            }
+    public int countOperations(User u, LocalDate from, LocalDate to) {
+        locks.lock(u.getLogin());
+        try {
+            return u.getOperations().count(from, to);
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+    }
+
+    // Поиск по словам названия и подтипа с отбором по периоду, сумме и типу:
+    // страница по возрастанию даты и общее число найденных.
+    // Первый поиск пользователя строит его индекс проходом по всем операциям
+    public OperationPage searchOperations(User u, OperationQuery query, int offset, int limit)
+            throws ValidationException {
+
+        Long min = query.getMinAmountMinor();
+        Long max = query.getMaxAmountMinor();
+        if (min != null && max != null && min > max)
+            throw new ValidationException("Минимальная сумма больше максимальной");
+        if (offset < 0 || limit < 0)
+            throw new ValidationException("Смещение и размер страницы не могут быть отрицательными");
+
+        long start = System.nanoTime();
+        locks.lock(u.getLogin());
+        try {
+            return u.getOperations().search(query, offset, limit);
+        } finally {
+            locks.unlock(u.getLogin());
+            SEARCH_TIME.recordSince(start);
         }
     }
 
+    // Вызывается под блокировкой пользователя
+    private void post(User u, Operation op) {
+        u.addOperation(op);
+        store.appendOperation(u, op);
+        alerts.onPosted(u, op);
+    }
+
+    // Операции пачки в журнал не пишутся: они и сдвинутые даты правил попадут в ближайший снимок,
+    // а до него после сбоя проводятся заново. Бюджеты budgets уже добавлены пользователю и пишутся
+    // в журнал: иначе правка их лимита после сбоя потерялась бы, а повторно проведённый бюджет
+    // не заменяет уже существующий. Каждый затронутый бюджет проверяется один раз.
+    // Вызывается под блокировкой пользователя
+    private void postBatch(User u, List<Operation> ops, List<BudgetItem> budgets) {
+        for (Operation op : ops) u.addOperation(op);
+        store.markChanged(u);
+        store.appendBudgets(u, budgets);
+        alerts.onBatch(u, ops, budgets);
+    }
+
     public double getSpentByMonthAndSubType(User u, String subType, YearMonth ym) {
-        return u.getOperations().stream()
-                .filter(o -> o.getType() == OperationType.EXPENSE
-                        && o.getSubType().equalsIgnoreCase(subType)
-                        && YearMonth.from(o.getDate()).equals(ym))
-                .mapToDouble(Operation::getAmount)
-                .sum();
+        return Money.toMajor(getSpentMinor(u, subType, ym));
     }
 
     public double getIncomeByMonthAndSubType(User u, String subType, YearMonth ym) {
-        return u.getOperations().stream()
-                .filter(o -> o.getType() == OperationType.INCOME
-                        && o.getSubType().equalsIgnoreCase(subType)
-                        && YearMonth.from(o.getDate()).equals(ym))
-                .mapToDouble(Operation::getAmount)
-                .sum();
+        return Money.toMajor(getIncomeMinor(u, subType, ym));
+    }
+
+    public long getSpentMinor(User u, String subType, YearMonth ym) {
+        return getTotalMinor(u, OperationType.EXPENSE, subType, ym);
+    }
+
+    public long getIncomeMinor(User u, String subType, YearMonth ym) {
+        return getTotalMinor(u, OperationType.INCOME, subType, ym);
+    }
+
+    private long getTotalMinor(User u, OperationType type, String subType, YearMonth ym) {
+        locks.lock(u.getLogin());
+        try {
+            return u.getTotalMinor(type, subType, ym);
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+    }
+
+    // Итоги месяца: неизменяемый снимок, читается без блокировки
+    public MonthlyRollup getMonthlyRollup(User u, YearMonth ym) {
+        locks.lock(u.getLogin());
+        try {
+            return u.getRollup(ym);
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+    }
+
+    // Итоги месяцев с операциями за период (границы включительно, null — без границы)
+    public List<MonthlyRollup> getMonthlyRollups(User u, LocalDate from, LocalDate to) {
+        locks.lock(u.getLogin());
+        try {
+            return u.getRollups(from, to);
+        } finally {
+            locks.unlock(u.getLogin());
+        }
     }
 
     public Map<String, Double> getActualDifference(User u, YearMonth ym, OperationType type) {
         Map<String, Double> diff = new HashMap<>();
 
-        for (BudgetItem b : u.getBudgets()) {
-            if (b.getMonth().equals(ym) && b.getType() == type) {
-                double actual = (type == OperationType.INCOME)
-                        ? getIncomeByMonthAndSubType(u, b.getSubType(), ym)
-                        : getSpentByMonthAndSubType(u, b.getSubType(), ym);
-
-                diff.put(b.getSubType(), b.getLimit() - actual);
+        long start = System.nanoTime();
+        locks.lock(u.getLogin());
+        try {
+            MonthlyRollup rollup = u.getRollup(ym);
+            for (BudgetItem b : u.getBudgets().month(ym)) {
+                if (b.getType() == type) {
+                    long actual = rollup.getTotalMinor(type, b.getSubTypeId());
+                    diff.put(b.getSubType(), Money.toMajor(b.getLimitMinor() - actual));
+                }
             }
+        } finally {
+            locks.unlock(u.getLogin());
+            ACTUALS_TIME.recordSince(start);
         }
 
         return diff;
     }
 
+    // ==========================
+    //     РЕГУЛЯРНЫЕ ЗАПИСИ
+    // ==========================
+    // Операция, которая повторяется раз в неделю или в месяц, начиная с start.
+    // Повторения проводит postDueRecurring
+    public RecurringRule addRecurringOperation(User u, OperationType type, String subType, double amount,
+                                               String name, RecurringRule.Period period, LocalDate start)
+            throws ValidationException {
+        return addRecurringOperationMinor(u, type, subType, Money.toMinor(amount), name, period, start);
+    }
+
+    // Сумма в копейках
+    public RecurringRule addRecurringOperationMinor(User u, OperationType type, String subType, long amountMinor,
+                                                    String name, RecurringRule.Period period, LocalDate start)
+            throws ValidationException {
+
+        if (amountMinor <= 0)
+            throw new ValidationException("Сумма должна быть больше нуля");
+        if (subType == null || subType.isBlank())
+            throw new ValidationException("Подтип не может быть пустым");
+        checkRuleStart(start);
+
+        return addRule(u, RecurringRule.operation(UUID.randomUUID().toString(), period, type, u.getSubTypes(), subType,
+                amountMinor, name == null ? "" : name, start));
+    }
+
+    // Бюджет с одним лимитом на каждый месяц, начиная с first.
+    // Бюджеты, уже заданные вручную, не меняются
+    public RecurringRule addRecurringBudget(User u, OperationType type, String subType, double limit,
+                                            YearMonth first) throws ValidationException {
+        return addRecurringBudgetMinor(u, type, subType, Money.toMinor(limit), first);
+    }
+
+    // Лимит в копейках
+    public RecurringRule addRecurringBudgetMinor(User u, OperationType type, String subType, long limitMinor,
+                                                 YearMonth first) throws ValidationException {
+
+        if (limitMinor <= 0)
+            throw new ValidationException("Лимит должен быть больше нуля");
+        if (subType == null || subType.isBlank())
+            throw new ValidationException("Подтип не может быть пустым");
+        checkRuleStart(first.atDay(1));
+
+        return addRule(u, RecurringRule.budget(UUID.randomUUID().toString(), type, u.getSubTypes(), subType,
+                limitMinor, first));
+    }
+
+    // Без ограничения одно правило с датой в далёком прошлом провело бы миллиарды повторений
+    private static void checkRuleStart(LocalDate start) throws ValidationException {
+        LocalDate today = LocalDate.now();
+        if (start.isBefore(today.minusYears(RULE_START_YEARS).withDayOfMonth(1))
+                || start.isAfter(today.plusYears(RULE_START_YEARS)))
+            throw new ValidationException("Первое повторение должно быть не дальше " + RULE_START_YEARS
+                    + " года от сегодняшнего дня");
+    }
+
+    private RecurringRule addRule(User u, RecurringRule r) {
+        locks.lock(u.getLogin());
+        try {
+            u.addRule(r);
+            store.appendRule(u, r);
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+        store.compactIfNeeded();
+        return r;
+    }
+
+    public List<RecurringRule> getRecurringRules(User u) {
+        locks.lock(u.getLogin());
+        try {
+            return List.copyOf(u.getRules());
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+    }
+
+    // Уже проведённые операции и бюджеты остаются
+    public void removeRecurringRule(User u, String id) throws NotFoundException {
+        locks.lock(u.getLogin());
+        try {
+            if (u.removeRule(id) == null)
+                throw new NotFoundException("Регулярная запись не найдена");
+            store.appendRuleRemoved(u, id);
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+        store.compactIfNeeded();
+    }
+
+    // Проводит все наступившие по today включительно повторения всех пользователей одним проходом.
+    // Загружаются только пользователи с наступившими повторениями; у каждого все его повторения
+    // (не больше MAX_OCCURRENCES_PER_PASS на правило) проводятся пачкой, затронутые бюджеты
+    // проверяются по разу. Операции на диск попадают одним снимком: они и сдвинутые даты правил
+    // пользователя лежат в одном блоке, поэтому после сбоя до снимка повторения просто проводятся
+    // заново. Бюджеты сразу пишутся в журнал (см. postBatch). Возвращает число проведённых операций
+    // и бюджетов.
+    public int postDueRecurring(LocalDate today) {
+        long start = System.nanoTime();
+        int posted = 0;
+        boolean changed = false;
+
+        for (String login : store.getRuleDueLogins(today)) {
+            User u = store.getUser(login);
+            if (u == null) continue;
+            int n = postDue(u, today);
+            if (n < 0) continue;
+            posted += n;
+            changed = true;
+        }
+
+        // Пользователи остаются изменёнными и попадут в следующий снимок; до него после сбоя
+        // повторения проводятся заново
+        if (changed && !store.save()) RECURRING_UNSAVED.add(posted);
+        RECURRING_POSTED.add(posted);
+        RECURRING_TIME.recordSince(start);
+        return posted;
+    }
+
+    // То же для одного пользователя — например, сразу после добавления правила.
+    // Снимок не делается: пользователь попадёт в ближайший, а правило уже в журнале,
+    // поэтому после сбоя до снимка повторения проводятся заново
+    public int postDueRecurring(User u, LocalDate today) {
+        int posted = Math.max(postDue(u, today), 0);
+        RECURRING_POSTED.add(posted);
+        return posted;
+    }
+
+    // Число проведённых операций и бюджетов; -1, если наступивших повторений нет
+    private int postDue(User u, LocalDate today) {
+        locks.lock(u.getLogin());
+        try {
+            List<Operation> ops = new ArrayList<>();
+            List<BudgetItem> budgets = new ArrayList<>();
+            boolean due = false;
+            for (RecurringRule r : u.getRules()) {
+                for (int n = 0; n < MAX_OCCURRENCES_PER_PASS && r.isDue(today); n++, r.advance()) {
+                    due = true;
+                    if (r.getKind() == RecurringRule.Kind.OPERATION) {
+                        ops.add(r.nextOperation());
+                    } else {
+                        BudgetItem b = r.nextBudget();
+                        if (u.addBudget(b)) budgets.add(b);
+                    }
+                }
+            }
+            if (!due) return -1;
+
+            postBatch(u, ops, budgets);
+            return ops.size() + budgets.size();
+        } finally {
+            locks.unlock(u.getLogin());
+        }
+    }
+
     // ==========================
     //          ПЕРЕВОД
     // ==========================
     public void transfer(User from, String to, double amount)
             throws NotFoundException, ValidationException {
+        transfer(UUID.randomUUID().toString(), from, to, amount);
+    }
 
-        if (amount <= 0)
-            throw new ValidationException("Сумма перевода должна быть больше нуля");
+    // Перевод с заданным идентификатором: повторный вызов того же отправителя с тем же id,
+    // получателем и суммой ничего не делает, поэтому клиент может безопасно повторить запрос после сбоя.
+    // Тот же id с другим получателем или суммой — ValidationException. Идентификаторы разных
+    // отправителей друг другу не мешают.
+    // Обе стороны блокируются вместе, обе проводки пишутся в журнал одной записью.
+    public void transfer(String transferId, User from, String to, double amount)
+            throws NotFoundException, ValidationException {
+        transferMinor(transferId, from, to, Money.toMinor(amount));
+    }
 
-        if (amount > from.getBalance())
-            throw new ValidationException("Недостатчно средств на кошельке");
+    // Сумма в копейках
+    public void transferMinor(String transferId, User from, String to, long amountMinor)
+            throws NotFoundException, ValidationException {
+
+        if (amountMinor <= 0)
+            throw new ValidationException("Сумма перевода должна быть больше нуля");
 
         User recipient = store.getUser(to);
 
         if (recipient == null)
             throw new NotFoundException("Получатель не найден");
 
-        addOperation(from, new Operation(
-                OperationType.EXPENSE,
-                "перевод " + to,
-                amount,
-                "Перевод",
-                java.time.LocalDate.now()
-        ));
+        long start = System.nanoTime();
+        locks.lock(from.getLogin(), recipient.getLogin());
+        try {
+            Transfer done = store.findTransfer(from.getLogin(), transferId);
+            if (done != null) {
+                if (done.getTo().equals(to) && done.getAmountMinor() == amountMinor) return;
+                throw new ValidationException("Перевод с таким идентификатором уже выполнен с другим получателем или суммой");
+            }
+
+            if (amountMinor > from.getBalanceMinor())
+                throw new ValidationException("Недостатчно средств на кошельке");
+
+            Transfer t = new Transfer(transferId, from.getLogin(), to, amountMinor, LocalDate.now());
+            Operation debit = t.debit(store.getSubTypes());
 
-        addOperation(recipient, new Operation(
-                OperationType.INCOME,
-                "перевод от " + from.getLogin(),
-                amount,
-                "Перевод",
-                java.time.LocalDate.now()
-        ));
+            from.addOperation(debit);
+            recipient.addOperation(t.credit(store.getSubTypes()));
+            store.appendTransfer(t);
+            alerts.onPosted(from, debit);
+        } finally {
+            locks.unlock(from.getLogin(), recipient.getLogin());
+            TRANSFER_TIME.recordSince(start);
+        }
+        store.compactIfNeeded();
     }
 
     // ==========================
     //          ОТЧЁТ
     // ==========================
     public void exportFullReport(User user, String filePath) throws ValidationException {
-        try (FileWriter fw = new FileWriter(filePath)) {
+        exportFullReport(user, filePath, ReportFilter.all());
+    }
 
-            fw.write("=== КОШЕЛЁК ===\n");
-            fw.write("Пользователь: " + user.getLogin() + "\n");
-            fw.write("Текущий баланс: " + user.getBalance() + " у.е.\n\n");
+    // Пишет отчёт потоково: память не зависит от длины истории
+    public void exportFullReport(User user, String filePath, ReportFilter filter) throws ValidationException {
+        try {
+            writeReport(user, Files.newOutputStream(Paths.get(filePath)), filter);
+        } catch (IOException | InvalidPathException e) {
+            throw new ValidationException("Не удалось записать файл: " + e.getMessage());
+        }
+    }
 
-            fw.write("=== БЮДЖЕТ ===\n");
-            fw.write("Тип,Подтип,Месяц,Установленный лимит,Фактическая сумма,Разница\n");
+    // Отчёт в поток (например, ответ сервера); поток закрывается по окончании.
+    // Под блокировкой пользователя отчёт пишется во временный файл, в out он копируется
+    // уже без блокировки: медленный клиент не задерживает снимок и других пользователей
+    public void exportFullReport(User user, OutputStream out, ReportFilter filter) throws IOException {
+        try (out) {
+            Path tmp = Files.createTempFile("finapp-report", ".csv");
+            try {
+                writeReport(user, Files.newOutputStream(tmp), filter);
+                Files.copy(tmp, out);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
 
-            for (BudgetItem b : user.getBudgets()) {
-                double fact = (b.getType() == OperationType.EXPENSE)
-                        ? getSpentByMonthAndSubType(user, b.getSubType(), b.getMonth())
-                        : getIncomeByMonthAndSubType(user, b.getSubType(), b.getMonth());
+    // Факт по бюджетам и итоги по месяцам берутся из итогов месяцев, проход по операциям —
+    // только для раздела операций.
+    private void writeReport(User user, OutputStream out, ReportFilter filter) throws IOException {
+        long start = System.nanoTime();
+        locks.lock(user.getLogin());
+        try (CsvReportWriter w = new CsvReportWriter(out)) {
+
+            w.line("=== КОШЕЛЁК ===");
+            w.line("Пользователь: " + user.getLogin());
+            w.line("Текущий баланс: " + Money.format(user.getBalanceMinor()) + " у.е.");
+            w.line("");
+
+            w.line("=== БЮДЖЕТ ===");
+            w.line("Тип,Подтип,Месяц,Установленный лимит,Фактическая сумма,Разница");
+
+            YearMonth fromMonth = filter.getFrom() == null ? null : YearMonth.from(filter.getFrom());
+            YearMonth toMonth = filter.getTo() == null ? null : YearMonth.from(filter.getTo());
+            for (BudgetItem b : user.getBudgets().range(fromMonth, toMonth)) {
+                if (filter.getTypes().contains(b.getType())) {
+                    w.budgetRow(b, user.getRollup(b.getMonth()).getTotalMinor(b.getType(), b.getSubTypeId()));
+                }
+            }
 
-                double diff = b.getLimit() - fact;
+            w.line("");
+            w.line("=== ИТОГИ ПО МЕСЯЦАМ ===");
+            w.line("Месяц,Доходы,Расходы,Итог");
 
-                fw.write(String.join(",",
-                        b.getType().name(),
-                        b.getSubType(),
-                        b.getMonth().toString(),
-                        String.valueOf(b.getLimit()),
-                        String.valueOf(fact),
-                        String.valueOf(diff)) + "\n");
+            for (MonthlyRollup r : user.getRollups(filter.getFrom(), filter.getTo())) {
+                long income = filter.getTypes().contains(OperationType.INCOME) ? r.getIncomeMinor() : 0;
+                long expense = filter.getTypes().contains(OperationType.EXPENSE) ? r.getExpenseMinor() : 0;
+                w.monthRow(r.getMonth(), income, expense);
             }
 
-            fw.write("\n=== ОПЕРАЦИИ ===\n");
-            fw.write("Дата,Тип,Подтип,Сумма,Название\n");
+            w.line("");
+            w.line("=== ОПЕРАЦИИ ===");
+            w.line("Дата,Тип,Подтип,Сумма,Название");
 
-            for (Operation o : user.getOperations()) {
-                fw.write(String.join(",",
-                        o.getDate().toString(),
-                        o.getType().name(),
-                        o.getSubType(),
-                        String.valueOf(o.getAmount()),
-                        o.getName()) + "\n");
+            for (Operation o : user.getOperations().range(filter.getFrom(), filter.getTo())) {
+                if (filter.getTypes().contains(o.getType())) w.operationRow(o);
             }
 
-            fw.write("\n=== КОНЕЦ ОТЧЁТА ===\n");
+            w.line("");
+            w.line("=== КОНЕЦ ОТЧЁТА ===");
 
-        } catch (IOException e) {
-            throw new ValidationException("Не удалось записать файл: " + e.getMessage());
+        } finally {
+            locks.unlock(user.getLogin());
+            EXPORT_TIME.recordSince(start);
         }
     }
 
-    public void save() {
-        store.save();
+    // false, если снимок записать не удалось
+    public boolean save() {
+        return store.save();
     }
 }
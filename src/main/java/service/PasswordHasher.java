@@ -0,0 +1,80 @@
+package service;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// Хэширование паролей PBKDF2-HMAC-SHA256 с солью.
+// Формат строки: pbkdf2-sha256$итерации$соль$хэш (Base64 без выравнивания).
+//
+// Число итераций задаётся в конструкторе или свойством finapp.pbkdf2.iterations;
+// подбирается бенчмарком LoginBenchmark под своё железо.
+// Строка в другом формате считается паролем из старых версий, хранившимся как есть.
+public class PasswordHasher {
+    public static final int DEFAULT_ITERATIONS = 120_000;
+
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    public PasswordHasher() {
+        this(Integer.getInteger("finapp.pbkdf2.iterations", DEFAULT_ITERATIONS));
+    }
+
+    public PasswordHasher(int iterations) {
+        if (iterations < 1) throw new IllegalArgumentException("Число итераций должно быть больше нуля");
+        this.iterations = iterations;
+    }
+
+    public int getIterations() { return iterations; }
+
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + b64.encodeToString(salt) + "$"
+                + b64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    // Сравнение за постоянное время
+    public boolean verify(String password, String stored) {
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) return false;
+        try {
+            int n = Integer.parseInt(parts[0]);
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            return n > 0 && MessageDigest.isEqual(pbkdf2(password, salt, n), expected);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Пароль без хэша или хэш с другим числом итераций — пересчитать при следующем входе
+    public boolean needsRehash(String stored) {
+        return !stored.startsWith(PREFIX + iterations + "$");
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 недоступен", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
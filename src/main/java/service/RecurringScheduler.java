@@ -0,0 +1,51 @@
+package service;
+
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Проводит регулярные операции и бюджеты: один проход при запуске и дальше по таймеру.
+// Каждый проход — FinanceService.postDueRecurring за сегодняшний день; проведённые записи
+// считаются в метрике recurring.posted, печатать их число — дело вызывающего runNow.
+public class RecurringScheduler implements AutoCloseable {
+    private final FinanceService service;
+    private ScheduledExecutorService timer;
+
+    public RecurringScheduler(FinanceService service) {
+        this.service = service;
+    }
+
+    // Проход сейчас; возвращает число проведённых операций и бюджетов
+    public int runNow() {
+        return service.postDueRecurring(LocalDate.now());
+    }
+
+    // Проход сразу и затем раз в periodMinutes; повторный вызов заменяет расписание
+    public synchronized void start(long periodMinutes) {
+        close();
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "finapp-recurring");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(this::run, 0, periodMinutes, TimeUnit.MINUTES);
+    }
+
+    // Ошибка прохода не должна отменять расписание
+    private void run() {
+        try {
+            runNow();
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка проведения регулярных записей: " + e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (timer != null) {
+            timer.shutdown();
+            timer = null;
+        }
+    }
+}
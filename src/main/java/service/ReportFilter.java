@@ -0,0 +1,36 @@
+package service;
+
+import model.OperationType;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.EnumSet;
+import java.util.Set;
+
+// Отбор данных для отчёта: период (границы включительно, null — без границы) и типы операций (null — все)
+public class ReportFilter {
+    private final LocalDate from;
+    private final LocalDate to;
+    private final Set<OperationType> types;
+
+    public ReportFilter(LocalDate from, LocalDate to, Set<OperationType> types) {
+        this.from = from;
+        this.to = to;
+        this.types = types == null ? EnumSet.allOf(OperationType.class)
+                : types.isEmpty() ? EnumSet.noneOf(OperationType.class) : EnumSet.copyOf(types);
+    }
+
+    public static ReportFilter all() {
+        return new ReportFilter(null, null, EnumSet.allOf(OperationType.class));
+    }
+
+    public LocalDate getFrom() { return from; }
+    public LocalDate getTo() { return to; }
+    public Set<OperationType> getTypes() { return types; }
+
+    public boolean matches(OperationType type, YearMonth month) {
+        return types.contains(type)
+                && (from == null || !month.isBefore(YearMonth.from(from)))
+                && (to == null || !month.isAfter(YearMonth.from(to)));
+    }
+}
@@ -0,0 +1,344 @@
+package storage;
+
+import metrics.Metrics;
+import model.*;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// Двоичный снимок хранилища.
+//
+// Заголовок: magic, версия, номер последней записи журнала.
+// Словарь подтипов: каждая категория хранится один раз, дальше — по номеру
+// (номера из словаря хранилища на момент записи, при чтении переназначаются).
+// Пользователь: логин, пароль, баланс, бюджеты, затем операции по столбцам
+// фиксированной ширины (день, тип, подтип, сумма) и отдельно названия, затем регулярные правила.
+// Записанный баланс при чтении сверяется с суммой прочитанных операций.
+//
+// Применённые переводы (id, отправитель, получатель, сумма, дата) идут после словаря, за пользователями —
+// оглавление (логин -> смещение и длина блока пользователя, ближайшая дата регулярных правил),
+// в последних 8 байтах — смещение оглавления. По оглавлению пользователь читается отдельно,
+// без разбора остальных; пользователей с наступившими повторениями видно без чтения их блоков.
+//
+// Читается только текущая версия: данные из finapp_users.dat переносит LegacyMigrator.
+public class BinarySnapshot {
+    private static final int MAGIC = 0x464E4150; // "FNAP"
+    private static final short VERSION = 7;
+    private static final OperationType[] TYPES = OperationType.values();
+    private static final RecurringRule.Kind[] KINDS = RecurringRule.Kind.values();
+    private static final RecurringRule.Period[] PERIODS = RecurringRule.Period.values();
+    // в оглавлении: у пользователя нет регулярных правил
+    private static final long NO_RULES = Long.MAX_VALUE;
+    private static final LongAdder BALANCE_MISMATCHES = Metrics.shared().counter("store.balance.mismatches");
+
+    // nextDue — ближайшая дата правил (эпохальный день) или NO_RULES
+    private record Entry(int offset, int length, long nextDue) {}
+
+    private final MappedByteBuffer buf;
+    private final long journalSeq;
+    // словарь хранилища, в который читаются подтипы
+    private final SubTypeDictionary subTypes;
+    // номер подтипа в файле -> номер в subTypes
+    private final int[] dict;
+    private final Map<String, Entry> index = new LinkedHashMap<>();
+
+    // ==========================
+    //           ЧТЕНИЕ
+    // ==========================
+    // Читает заголовок, словарь, переводы (в transfers, если не null) и оглавление
+    public static BinarySnapshot open(Path file, Consumer<Transfer> transfers, SubTypeDictionary subTypes)
+            throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new BinarySnapshot(file, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), transfers, subTypes);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            // обрезанный или испорченный файл: длины и смещения указывают за его пределы
+            throw new IOException("Повреждён файл " + file, e);
+        }
+    }
+
+    private BinarySnapshot(Path file, MappedByteBuffer buf, Consumer<Transfer> transfers, SubTypeDictionary subTypes)
+            throws IOException {
+        this.buf = buf;
+        this.subTypes = subTypes;
+
+        if (buf.remaining() < 6 || buf.getInt() != MAGIC)
+            throw new IOException("Неизвестный формат файла " + file);
+        short version = buf.getShort();
+        if (version != VERSION)
+            throw new IOException("Неподдерживаемая версия снимка: " + version);
+
+        journalSeq = buf.getLong();
+
+        dict = new int[buf.getInt()];
+        for (int i = 0; i < dict.length; i++) dict[i] = subTypes.idOf(readString(buf));
+
+        int transferCount = buf.getInt();
+        for (int i = 0; i < transferCount; i++) {
+            Transfer t = new Transfer(readString(buf), readString(buf), readString(buf), buf.getLong(),
+                    LocalDate.ofEpochDay(buf.getInt()));
+            if (transfers != null) transfers.accept(t);
+        }
+
+        buf.position((int) buf.getLong(buf.limit() - Long.BYTES));
+        int count = buf.getInt();
+        for (int i = 0; i < count; i++) {
+            String login = readString(buf);
+            int offset = (int) buf.getLong();
+            int length = buf.getInt();
+            index.put(login, new Entry(offset, length, buf.getLong()));
+        }
+    }
+
+    public long getJournalSeq() { return journalSeq; }
+
+    public Set<String> logins() { return Collections.unmodifiableSet(index.keySet()); }
+
+    // Логины из оглавления с регулярными правилами -> ближайшая дата повторения
+    public Map<String, LocalDate> ruleDue() {
+        Map<String, LocalDate> due = new HashMap<>();
+        index.forEach((login, e) -> {
+            if (e.nextDue() != NO_RULES) due.put(login, LocalDate.ofEpochDay(e.nextDue()));
+        });
+        return due;
+    }
+
+    // null, если пользователя нет в оглавлении
+    public User readUser(String login) {
+        Entry e = index.get(login);
+        if (e == null) return null;
+
+        ByteBuffer b = buf.duplicate();
+        b.position(e.offset());
+        return readUser(b);
+    }
+
+    private User readUser(ByteBuffer buf) {
+        User u = new User(readString(buf), readString(buf), subTypes);
+        long balance = buf.getLong();
+
+        int budgetCount = buf.getInt();
+        for (int j = 0; j < budgetCount; j++) {
+            OperationType type = TYPES[buf.get()];
+            int subType = dict[buf.getInt()];
+            int month = buf.getInt();
+            long limit = buf.getLong();
+            u.addBudget(BudgetItem.ofMinor(subTypes, type, subType, YearMonth.of(month / 12, month % 12 + 1), limit));
+        }
+
+        int n = buf.getInt();
+        int dayPos = buf.position();
+        int typePos = dayPos + n * Integer.BYTES;
+        int subPos = typePos + n;
+        int amountPos = subPos + n * Integer.BYTES;
+        buf.position(amountPos + n * Long.BYTES);
+
+        for (int j = 0; j < n; j++) {
+            u.addOperation(Operation.ofMinor(subTypes,
+                    TYPES[buf.get(typePos + j)],
+                    dict[buf.getInt(subPos + j * Integer.BYTES)],
+                    buf.getLong(amountPos + j * Long.BYTES),
+                    readString(buf),
+                    LocalDate.ofEpochDay(buf.getInt(dayPos + j * Integer.BYTES))));
+        }
+
+        int ruleCount = buf.getInt();
+        for (int j = 0; j < ruleCount; j++) {
+            u.addRule(RecurringRule.of(readString(buf), KINDS[buf.get()], PERIODS[buf.get()],
+                    TYPES[buf.get()], subTypes, dict[buf.getInt()], buf.getLong(), readString(buf),
+                    buf.get(), LocalDate.ofEpochDay(buf.getInt())));
+        }
+
+        // баланс ведётся по прочитанным операциям; расхождение с записанным — признак порчи файла
+        if (u.getBalanceMinor() != balance) {
+            BALANCE_MISMATCHES.increment();
+            System.err.println("Баланс пользователя " + u.getLogin() + " в снимке расходится с операциями: "
+                    + Money.format(balance) + " против " + Money.format(u.getBalanceMinor()));
+        }
+        return u;
+    }
+
+    // Блок пользователя можно переносить в новый снимок как есть:
+    // номера подтипов файла совпадают с номерами словаря subTypes
+    private boolean rawCopyable(SubTypeDictionary subTypes) {
+        if (this.subTypes != subTypes) return false;
+        for (int i = 0; i < dict.length; i++) if (dict[i] != i) return false;
+        return true;
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ==========================
+    //           ЗАПИСЬ
+    // ==========================
+    public static void write(Path file, Map<String, User> users, Collection<Transfer> transfers, long journalSeq,
+                             SubTypeDictionary dict) throws IOException {
+        write(file, users.keySet(), users::get, null, transfers, journalSeq, dict);
+    }
+
+    // Пишет пользователей logins: загруженных (resident не null) — из памяти,
+    // остальных — из previous, по возможности копированием блока без разбора.
+    // Номера подтипов пользователей — из словаря dict
+    public static void write(Path file, Collection<String> logins, Function<String, User> resident,
+                             BinarySnapshot previous, Collection<Transfer> transfers, long journalSeq,
+                             SubTypeDictionary dict) throws IOException {
+        boolean raw = previous != null && previous.rawCopyable(dict);
+        Map<String, Entry> index = new LinkedHashMap<>();
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(journalSeq);
+
+            int dictSize = dict.size();
+            out.writeInt(dictSize);
+            for (int id = 0; id < dictSize; id++) writeString(out, dict.name(id));
+
+            out.writeInt(transfers.size());
+            for (Transfer t : transfers) {
+                writeString(out, t.getId());
+                writeString(out, t.getFrom());
+                writeString(out, t.getTo());
+                out.writeLong(t.getAmountMinor());
+                out.writeInt((int) t.getDate().toEpochDay());
+            }
+
+            for (String login : logins) {
+                User u = resident.apply(login);
+                int offset = out.size();
+                long nextDue;
+
+                if (u != null) {
+                    nextDue = writeUser(out, u);
+                } else if (previous != null && previous.index.containsKey(login)) {
+                    Entry e = previous.index.get(login);
+                    if (raw) {
+                        ByteBuffer block = previous.buf.duplicate();
+                        block.position(e.offset()).limit(e.offset() + e.length());
+                        byte[] bytes = new byte[e.length()];
+                        block.get(bytes);
+                        out.write(bytes);
+                        nextDue = e.nextDue();
+                    } else {
+                        nextDue = writeUser(out, previous.readUser(login));
+                    }
+                } else {
+                    continue;
+                }
+                index.put(login, new Entry(offset, out.size() - offset, nextDue));
+            }
+
+            long indexOffset = out.size();
+            out.writeInt(index.size());
+            for (Map.Entry<String, Entry> e : index.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeLong(e.getValue().offset());
+                out.writeInt(e.getValue().length());
+                out.writeLong(e.getValue().nextDue());
+            }
+            out.writeLong(indexOffset);
+        }
+    }
+
+    // ==========================
+    //          СЛОВАРЬ
+    // ==========================
+    // Словарь подтипов отдельным файлом. Читается до параллельной загрузки частей хранилища:
+    // тогда номера в частях совпадают с номерами словаря хранилища и блоки пользователей
+    // переносятся при сохранении без разбора.
+    public static void writeDictionary(Path file, SubTypeDictionary dict) throws IOException {
+        int size = dict.size();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(size);
+            for (int id = 0; id < size; id++) writeString(out, dict.name(id));
+        }
+    }
+
+    public static void readDictionary(Path file, SubTypeDictionary dict) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file));
+        int size = buf.getInt();
+        for (int i = 0; i < size; i++) dict.idOf(readString(buf));
+    }
+
+    // Возвращает ближайшую дату правил пользователя для оглавления
+    private static long writeUser(DataOutputStream out, User u) throws IOException {
+        writeString(out, u.getLogin());
+        writeString(out, u.getPasswordHash());
+        out.writeLong(u.getBalanceMinor());
+
+        BudgetRegistry budgets = u.getBudgets();
+        out.writeInt(budgets.size());
+        for (BudgetItem b : budgets) {
+            out.writeByte(b.getType().ordinal());
+            out.writeInt(b.getSubTypeId());
+            out.writeInt(b.getMonth().getYear() * 12 + b.getMonth().getMonthValue() - 1);
+            out.writeLong(b.getLimitMinor());
+        }
+
+        writeOperations(out, u.getOperations());
+
+        List<RecurringRule> rules = u.getRules();
+        out.writeInt(rules.size());
+        for (RecurringRule r : rules) {
+            writeString(out, r.getId());
+            out.writeByte(r.getKind().ordinal());
+            out.writeByte(r.getPeriod().ordinal());
+            out.writeByte(r.getType().ordinal());
+            out.writeInt(r.getSubTypeId());
+            out.writeLong(r.getAmountMinor());
+            writeString(out, r.getName());
+            out.writeByte(r.getAnchorDay());
+            out.writeInt((int) r.getNextDue().toEpochDay());
+        }
+
+        LocalDate next = u.nextRuleDue();
+        return next == null ? NO_RULES : next.toEpochDay();
+    }
+
+    // Столбцы собираются за один проход, без создания объектов Operation
+    private static void writeOperations(DataOutputStream out, OperationLog ops) throws IOException {
+        int n = ops.size();
+        int[] days = new int[n];
+        byte[] types = new byte[n];
+        int[] subTypes = new int[n];
+        long[] amounts = new long[n];
+        String[] names = new String[n];
+        int[] row = {0};
+        ops.forEach((day, type, subTypeId, amountMinor, name) -> {
+            int j = row[0]++;
+            days[j] = (int) day;
+            types[j] = (byte) type.ordinal();
+            subTypes[j] = subTypeId;
+            amounts[j] = amountMinor;
+            names[j] = name;
+        });
+
+        out.writeInt(n);
+        for (int day : days) out.writeInt(day);
+        out.write(types);
+        for (int subType : subTypes) out.writeInt(subType);
+        for (long amount : amounts) out.writeLong(amount);
+        for (String name : names) writeString(out, name);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -1,30 +1,659 @@
 package storage;
 
+import exceptions.StorageException;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import model.BudgetItem;
+import model.Operation;
+import model.RecurringRule;
+import model.SubTypeDictionary;
+import model.Transfer;
 import model.User;
-import java.io.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.*;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+// Данные разбиты на SHARDS частей по хэшу логина: каталог finapp_users.shards,
+// в нём файл на каждую часть (формат BinarySnapshot) и общий словарь подтипов.
+// Части загружаются параллельно; снимок переписывает только части с изменёнными
+// пользователями, каждую — через временный файл и атомарную замену.
+//
+// Пользователи загружаются по требованию.
+// При загрузке читаются только оглавления частей (логины); данные пользователя
+// читаются из его части при первом getUser. Последние CACHE_SIZE запрошенных пользователей
+// держатся в памяти, остальные — только слабыми ссылками: пока на пользователя ссылается
+// сессия (вошедший пользователь), это тот же объект, иначе сборщик мусора может его выгрузить
+// и следующий getUser прочитает его заново. Пользователи, изменённые после последнего снимка,
+// держатся в памяти до следующего снимка.
+//
+// Для регулярных правил хранилище помнит ближайшую дату повторения каждого пользователя
+// (из оглавлений частей и изменений после загрузки): планировщик загружает только тех,
+// у кого повторение наступило.
+//
+// Ошибки ввода-вывода не прерывают работу, но считаются в метриках (store.*.failures)
+// и доступны через getLastFailure. Если загрузка прошла с ошибкой, снимок не пишется:
+// иначе недочитанные части перезаписались бы без своих пользователей. Журнал при этом
+// не очищается, и после исправления файлов данные восстановятся при следующем запуске.
 public class DataStore {
-    private static final String FILE = "finapp_users.dat";
-    private final Map<String, User> users = new HashMap<>();
+    // единый снимок, в который LegacyMigrator переносит старый .dat; раскладывается по частям при первом сохранении
+    private static final String FILE = "finapp_users.bin";
+    private static final String LEGACY_FILE = "finapp_users.dat";
+    private static final String JOURNAL_FILE = "finapp_users.journal";
+    private static final String SHARD_DIR = "finapp_users.shards";
+    private static final String DICTIONARY_FILE = "dictionary.bin";
+    // число частей задаёт имена файлов; при его изменении данные нужно переложить
+    private static final int SHARDS = 64;
+    // после стольких записей журнал сворачивается в снимок
+    private static final int COMPACT_THRESHOLD = 1000;
+    private static final int CACHE_SIZE = Integer.getInteger("finapp.cache.users", 1000);
+
+    private static final LatencyHistogram LOAD_TIME = Metrics.shared().histogram("store.load");
+    private static final LatencyHistogram LOAD_USER_TIME = Metrics.shared().histogram("store.loadUser");
+    private static final LatencyHistogram SAVE_TIME = Metrics.shared().histogram("store.save");
+    private static final LatencyHistogram FLUSH_TIME = Metrics.shared().histogram("journal.flush");
+    private static final LongAdder LOAD_BYTES = Metrics.shared().counter("store.load.bytes");
+    private static final LongAdder SAVE_BYTES = Metrics.shared().counter("store.save.bytes");
+    private static final LongAdder LOAD_FAILURES = Metrics.shared().counter("store.load.failures");
+    private static final LongAdder SAVE_FAILURES = Metrics.shared().counter("store.save.failures");
+    private static final LongAdder JOURNAL_FAILURES = Metrics.shared().counter("journal.failures");
+    private static final FlushStats FLUSH_STATS = Metrics.shared().bean("JournalFlush", new FlushStats());
+
+    private final Set<String> logins = ConcurrentHashMap.newKeySet();
+    private final Map<String, UserRef> live = new ConcurrentHashMap<>();
+    private final ReferenceQueue<User> collected = new ReferenceQueue<>();
+    private final Map<String, User> dirty = new ConcurrentHashMap<>();
+    private final Map<String, User> recent = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    // логин -> ближайшая дата повторения регулярных правил
+    private final Map<String, LocalDate> ruleDue = new ConcurrentHashMap<>();
+
+    // по частям: открытый файл, логины, переводы (в части отправителя), номер записи журнала в снимке.
+    // Идентификатор перевода уникален только у своего отправителя
+    private final AtomicReferenceArray<BinarySnapshot> shards = new AtomicReferenceArray<>(SHARDS);
+    private final List<Set<String>> shardLogins = new ArrayList<>(SHARDS);
+    private final List<Map<TransferKey, Transfer>> shardTransfers = new ArrayList<>(SHARDS);
+    private final long[] shardSeq = new long[SHARDS];
+    // номер записи журнала в едином снимке
+    private long legacySeq;
+
+    private final Path file;
+    private final Path legacyFile;
+    private final Path shardDir;
+    private final Journal journal;
+    // категории всех пользователей хранилища
+    private final SubTypeDictionary subTypes = new SubTypeDictionary();
+    private final UserLocks locks = new UserLocks();
+    private final DurabilityMode mode;
+    private final long flushIntervalNanos;
+    private final int batchSize;
+    // порядок пачек журнала в файле; берётся до монитора хранилища
+    private final Object flushLock = new Object();
+    private boolean snapshotDue;
+    // записи журнала до этого номера на диске (или, если сброс не удался, ждут снимка);
+    // меняется под монитором хранилища, ожидающие запись будятся notifyAll
+    private long flushedSeq;
+    private volatile IOException loadFailure;
+    private volatile IOException lastFailure;
+
+    public DataStore(DurabilityMode mode, long flushIntervalMillis, int batchSize) {
+        this(Paths.get(""), mode, flushIntervalMillis, batchSize);
+    }
+
+    // Файлы хранилища лежат в каталоге dir.
+    // В режиме GROUP_COMMIT запись ждёт сброса журнала на диск не дольше flushIntervalMillis
+    // (или пока не накопится batchSize записей), затем сбрасывает журнал сама
+    public DataStore(Path dir, DurabilityMode mode, long flushIntervalMillis, int batchSize) {
+        this.file = dir.resolve(FILE);
+        this.legacyFile = dir.resolve(LEGACY_FILE);
+        this.shardDir = dir.resolve(SHARD_DIR);
+        this.journal = new Journal(dir.resolve(JOURNAL_FILE).toString(), subTypes);
+        this.mode = mode;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, flushIntervalMillis));
+        this.batchSize = Math.max(1, batchSize);
+        for (int i = 0; i < SHARDS; i++) {
+            shardLogins.add(ConcurrentHashMap.newKeySet());
+            shardTransfers.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    // Режим журнала из свойств finapp.journal.mode (SYNC или GROUP_COMMIT),
+    // finapp.journal.flush.millis (по умолчанию 2) и finapp.journal.batch (по умолчанию 512);
+    // без свойства finapp.journal.mode — defaultMode
+    public static DataStore fromProperties(DurabilityMode defaultMode) {
+        DurabilityMode mode = DurabilityMode.valueOf(
+                System.getProperty("finapp.journal.mode", defaultMode.name()).toUpperCase(Locale.ROOT));
+        return new DataStore(mode, Long.getLong("finapp.journal.flush.millis", 2),
+                Integer.getInteger("finapp.journal.batch", 512));
+    }
+
+    // Читает оглавления частей и проигрывает журнал; пользователи из журнала
+    // загружаются сразу, остальные — при первом обращении.
+    // Возвращает false, если что-то прочитать не удалось (см. getLastFailure)
+    public boolean load() {
+        long start = System.nanoTime();
+        try {
+            if (Files.isDirectory(shardDir)) {
+                loadShards();
+            } else {
+                loadLegacy();
+            }
+        } catch (IOException e) {
+            loadFailed(e);
+        }
+
+        long snapshotSeq = legacySeq;
+        for (long seq : shardSeq) snapshotSeq = Math.max(snapshotSeq, seq);
+
+        try {
+            journal.replay(new Journal.Users() {
+                @Override
+                public User get(String login, long seq) {
+                    if (seq <= Math.max(legacySeq, shardSeq[shard(login)])) return null;
+                    User u = getUser(login);
+                    if (u != null) dirty.put(login, u);
+                    return u;
+                }
+
+                @Override
+                public void add(User u) {
+                    if (!hasUser(u.getLogin())) register(u);
+                }
+
+                @Override
+                public void addTransfer(Transfer t) {
+                    rememberTransfer(t);
+                }
+            }, snapshotSeq);
+            LOAD_BYTES.add(journal.length());
+        } catch (IOException e) {
+            loadFailed(e);
+        }
+
+        for (User u : dirty.values()) {
+            u.primeBudgetAlerts();
+            updateRuleDue(u);
+        }
+        synchronized (this) {
+            flushedSeq = journal.getLastSeq();
+        }
+        LOAD_TIME.recordSince(start);
+        return loadFailure == null;
+    }
+
+    private void loadFailed(IOException e) {
+        loadFailure = e;
+        failed(LOAD_FAILURES, "загрузка", e);
+    }
+
+    private void failed(LongAdder counter, String what, IOException e) {
+        counter.increment();
+        lastFailure = e;
+        System.err.println("Ошибка хранилища (" + what + "): " + e);
+    }
+
+    private void loadShards() throws IOException {
+        Path dictionary = shardDir.resolve(DICTIONARY_FILE);
+        if (Files.exists(dictionary)) BinarySnapshot.readDictionary(dictionary, subTypes);
+
+        IntStream.range(0, SHARDS).parallel().forEach(i -> {
+            Path f = shardFile(shardDir, i);
+            if (!Files.exists(f)) return;
+            try {
+                BinarySnapshot s = BinarySnapshot.open(f, DataStore.this::rememberTransfer, subTypes);
+                shardSeq[i] = s.getJournalSeq();
+                shardLogins.get(i).addAll(s.logins());
+                ruleDue.putAll(s.ruleDue());
+                shards.set(i, s);
+                LOAD_BYTES.add(Files.size(f));
+            } catch (IOException e) {
+                loadFailed(e);
+            }
+        });
+
+        for (int i = 0; i < SHARDS; i++) logins.addAll(shardLogins.get(i));
+    }
+
+    // Единый снимок (перенесённый из старого .dat) читается целиком;
+    // все пользователи попадут в части при первом сохранении
+    private void loadLegacy() throws IOException {
+        LegacyMigrator.migrateIfNeeded(legacyFile, file, subTypes);
+        if (!Files.exists(file)) return;
+
+        BinarySnapshot s = BinarySnapshot.open(file, this::rememberTransfer, subTypes);
+        LOAD_BYTES.add(Files.size(file));
+        legacySeq = s.getJournalSeq();
+        for (String login : s.logins()) register(s.readUser(login));
+        snapshotDue = true;
+    }
+
+    // Снимок изменённых частей. Каждая часть пишется во временный файл и атомарно
+    // подменяет старую, затем журнал очищается. На время записи изменения всех пользователей ждут.
+    // Первый снимок пишет все части во временный каталог и переименовывает его целиком.
+    // Возвращает false, если снимок не записан (см. getLastFailure)
+    public boolean save() {
+        if (locks.isHeldByCurrentThread())
+            throw new IllegalStateException("Снимок нельзя делать под блокировкой пользователя");
+        if (loadFailure != null) {
+            failed(SAVE_FAILURES, "снимок", new IOException(
+                    "данные загружены не полностью, снимок не записывается: " + loadFailure.getMessage()));
+            return false;
+        }
+
+        long start = System.nanoTime();
+        locks.lockAll();
+        try {
+            // сброс журнала на диск (flush) не должен идти одновременно с его очисткой
+            synchronized (flushLock) {
+                synchronized (this) {
+                    writeSnapshot();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            failed(SAVE_FAILURES, "снимок", e);
+            return false;
+        } finally {
+            locks.unlockAll();
+            SAVE_TIME.recordSince(start);
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        boolean first = !Files.isDirectory(shardDir);
+        Path target = first ? shardDir.resolveSibling(SHARD_DIR + ".tmp") : shardDir;
+        if (first) deleteRecursively(target);
+        Files.createDirectories(target);
+
+        Set<Integer> due = new TreeSet<>();
+        for (String login : dirty.keySet()) due.add(shard(login));
+        if (first) {
+            for (int i = 0; i < SHARDS; i++) {
+                if (!shardLogins.get(i).isEmpty() || !shardTransfers.get(i).isEmpty()) due.add(i);
+            }
+        }
+
+        long seq = journal.getLastSeq();
+        Path dictTmp = target.resolve(DICTIONARY_FILE + ".tmp");
+        BinarySnapshot.writeDictionary(dictTmp, subTypes);
+        SAVE_BYTES.add(Files.size(dictTmp));
+        Files.move(dictTmp, target.resolve(DICTIONARY_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        try {
+            due.parallelStream().forEach(i -> writeShard(target, i, seq));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (first) Files.move(target, shardDir, StandardCopyOption.ATOMIC_MOVE);
+
+        for (int i : due) {
+            shards.set(i, BinarySnapshot.open(shardFile(shardDir, i), null, subTypes));
+            shardSeq[i] = seq;
+        }
+        legacySeq = 0;
+        journal.reset();
+        dirty.clear();
+        snapshotDue = false;
+        settled(journal.getLastSeq());
+    }
+
+    private void writeShard(Path dir, int i, long seq) {
+        Path target = shardFile(dir, i);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            BinarySnapshot.write(tmp, shardLogins.get(i), this::resident, shards.get(i),
+                    shardTransfers.get(i).values(), seq, subTypes);
+            SAVE_BYTES.add(Files.size(tmp));
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+
+    private static Path shardFile(Path dir, int i) {
+        return dir.resolve(String.format("shard-%02d.bin", i));
+    }
+
+    // У похожих логинов ("user1", "user2") String.hashCode различается в основном младшими битами,
+    // поэтому хэш перемешивается умножением и часть берётся по старшим битам
+    private static int shard(String login) {
+        return (login.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(SHARDS));
+    }
+
+    // Сбрасывает накопленные записи журнала на диск. Пачка забирается из буфера под монитором
+    // хранилища, а пишется и сбрасывается на диск вне его: пока идёт fsync, запросы продолжают
+    // дописывать записи в буфер. flushLock держит пачки в файле в порядке их записей.
+    // К возврату все записи, сделанные до вызова, на диске: если их пачку забрал другой поток,
+    // flushLock дождётся конца её записи
+    public void flush() {
+        synchronized (flushLock) {
+            Journal.Batch batch;
+            synchronized (this) {
+                batch = journal.takePending();
+            }
+            if (batch == null) return;
+
+            long start = System.nanoTime();
+            try {
+                journal.write(batch, true);
+                long nanos = System.nanoTime() - start;
+                FLUSH_STATS.record(batch.records(), nanos);
+                FLUSH_TIME.record(nanos);
+                synchronized (this) {
+                    settled(batch.lastSeq());
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    journal.restore(batch);
+                    journalFailed(e);
+                    settled(batch.lastSeq());
+                }
+            }
+        }
+    }
+
+    // Вызывается под монитором хранилища: будит записи, ждущие сброса до seq
+    private void settled(long seq) {
+        if (seq <= flushedSeq) return;
+        flushedSeq = seq;
+        notifyAll();
+    }
+
+    // GROUP_COMMIT: ждёт, пока запись seq сбросит на диск другой поток — тогда все, кто писал
+    // одновременно, обходятся одним fsync. Если за flushIntervalNanos этого не случилось,
+    // сбрасывает журнал сам
+    private void awaitFlushed(long seq) {
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        boolean interrupted = false;
+        synchronized (this) {
+            while (flushedSeq < seq) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) break;
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    break;
+                }
+            }
+            if (flushedSeq >= seq) return;
+        }
+        try {
+            flush();
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    // Вызывается под монитором хранилища: записи остаются в памяти и попадут в ближайший снимок
+    private void journalFailed(IOException e) {
+        snapshotDue = true;
+        failed(JOURNAL_FAILURES, "журнал", e);
+    }
 
-    @SuppressWarnings("unchecked")
-    public void load() {
-        File f = new File(FILE);
-        if (!f.exists()) return;
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(f))) {
-            users.putAll((Map<String, User>) ois.readObject());
-        } catch (Exception ignored) {}
+    // Сохраняет снимок
+    public void close() {
+        save();
     }
 
-    public void save() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(FILE))) {
-            oos.writeObject(users);
-        } catch (IOException ignored) {}
+    // Сворачивает журнал, если он разросся или запись в него не удалась.
+    // Вызывается после снятия блокировок пользователя.
+    public void compactIfNeeded() {
+        if (loadFailure != null) return;
+        boolean due;
+        synchronized (this) {
+            due = snapshotDue || journal.size() >= COMPACT_THRESHOLD;
+        }
+        if (due) save();
     }
 
-    public User getUser(String login) { return users.get(login); }
-    public void addUser(User u) { users.put(u.getLogin(), u); }
-    public boolean hasUser(String login) { return users.containsKey(login); }
-    public Map<String, User> getAll() { return users; }
-}
\ No newline at end of file
+    // ==========================
+    //      ЗАПИСЬ В ЖУРНАЛ
+    // ==========================
+    // Вызываются под блокировкой пользователя из UserLocks
+    public void appendOperation(User u, Operation op) {
+        append(() -> {
+            dirty.put(u.getLogin(), u);
+            journal.appendOperation(u, op);
+        });
+    }
+
+    public void appendPassword(User u) {
+        append(() -> {
+            dirty.put(u.getLogin(), u);
+            journal.appendPassword(u);
+        });
+    }
+
+    public void appendBudget(User u, BudgetItem b) {
+        append(() -> {
+            dirty.put(u.getLogin(), u);
+            journal.appendBudget(u, b);
+        });
+    }
+
+    public void appendBudgetLimit(User u, BudgetItem b) {
+        append(() -> {
+            dirty.put(u.getLogin(), u);
+            journal.appendBudgetLimit(u, b);
+        });
+    }
+
+    // Бюджеты, проведённые регулярными правилами: все записи пачки ждут одного сброса журнала
+    public void appendBudgets(User u, List<BudgetItem> budgets) {
+        if (budgets.isEmpty()) return;
+        append(() -> {
+            dirty.put(u.getLogin(), u);
+            for (BudgetItem b : budgets) journal.appendBudget(u, b);
+        });
+    }
+
+    // Обе проводки перевода уже применены к пользователям; в журнал уходят одной записью
+    public void appendTransfer(Transfer t) {
+        append(() -> {
+            rememberTransfer(t);
+            markDirty(t.getFrom());
+            markDirty(t.getTo());
+            journal.appendTransfer(t);
+        });
+    }
+
+    public void appendRule(User u, RecurringRule r) {
+        append(() -> {
+            dirty.put(u.getLogin(), u);
+            updateRuleDue(u);
+            journal.appendRule(u, r);
+        });
+    }
+
+    public void appendRuleRemoved(User u, String id) {
+        append(() -> {
+            dirty.put(u.getLogin(), u);
+            updateRuleDue(u);
+            journal.appendRuleRemoved(u, id);
+        });
+    }
+
+    private interface Record {
+        void write() throws IOException;
+    }
+
+    // Запись попадает в буфер журнала под монитором хранилища, сброс на диск — уже вне монитора.
+    // Возврат — только когда запись на диске (или сброс не удался и она ждёт снимка):
+    // в SYNC и при набравшейся пачке журнал сбрасывается сразу, в GROUP_COMMIT — см. awaitFlushed
+    private void append(Record r) {
+        boolean due;
+        long seq;
+        synchronized (this) {
+            try {
+                r.write();
+            } catch (IOException e) {
+                journalFailed(e);
+                return;
+            }
+            seq = journal.getLastSeq();
+            due = mode == DurabilityMode.SYNC || journal.pendingRecords() >= batchSize;
+        }
+        if (due) {
+            flush();
+        } else {
+            awaitFlushed(seq);
+        }
+    }
+
+    // Пользователь изменён без записи в журнал (импорт, проведённые повторения):
+    // его часть попадёт в следующий снимок
+    public void markChanged(User u) {
+        dirty.put(u.getLogin(), u);
+        updateRuleDue(u);
+    }
+
+    private void updateRuleDue(User u) {
+        LocalDate next = u.nextRuleDue();
+        if (next == null) {
+            ruleDue.remove(u.getLogin());
+        } else {
+            ruleDue.put(u.getLogin(), next);
+        }
+    }
+
+    // Логины, у которых есть повторения с датой не позже day; данные пользователей не загружаются
+    public List<String> getRuleDueLogins(LocalDate day) {
+        List<String> due = new ArrayList<>();
+        ruleDue.forEach((login, next) -> {
+            if (!next.isAfter(day)) due.add(login);
+        });
+        return due;
+    }
+
+    // Уже проведённый перевод отправителя from с идентификатором id или null
+    public Transfer findTransfer(String from, String id) {
+        return shardTransfers.get(shard(from)).get(new TransferKey(from, id));
+    }
+
+    private void rememberTransfer(Transfer t) {
+        shardTransfers.get(shard(t.getFrom())).put(new TransferKey(t.getFrom(), t.getId()), t);
+    }
+
+    // ==========================
+    //        ПОЛЬЗОВАТЕЛИ
+    // ==========================
+    public User getUser(String login) {
+        purgeCollected();
+        User u = resident(login);
+
+        if (u == null) {
+            BinarySnapshot s = shards.get(shard(login));
+            if (s == null || !logins.contains(login)) return null;
+
+            User[] loaded = new User[1];
+            live.compute(login, (k, ref) -> {
+                loaded[0] = ref == null ? null : ref.get();
+                if (loaded[0] != null) return ref;
+                loaded[0] = hydrate(s, k);
+                return loaded[0] == null ? null : new UserRef(loaded[0], collected);
+            });
+            u = loaded[0];
+            if (u == null) return null;
+        }
+
+        synchronized (recent) {
+            recent.put(login, u);
+        }
+        return u;
+    }
+
+    private static User hydrate(BinarySnapshot s, String login) {
+        long start = System.nanoTime();
+        User u = s.readUser(login);
+        if (u != null) u.primeBudgetAlerts();
+        LOAD_USER_TIME.recordSince(start);
+        return u;
+    }
+
+    // Пользователь, уже загруженный в память, или null
+    private User resident(String login) {
+        UserRef ref = live.get(login);
+        return ref == null ? null : ref.get();
+    }
+
+    private void markDirty(String login) {
+        User u = resident(login);
+        if (u != null) dirty.put(login, u);
+    }
+
+    // Новый пользователь, которого нет в снимке: держится в памяти до следующего снимка
+    private void register(User u) {
+        dirty.put(u.getLogin(), u);
+        live.put(u.getLogin(), new UserRef(u, collected));
+        shardLogins.get(shard(u.getLogin())).add(u.getLogin());
+        logins.add(u.getLogin());
+    }
+
+    private void purgeCollected() {
+        for (Object ref; (ref = collected.poll()) != null; ) {
+            UserRef r = (UserRef) ref;
+            live.remove(r.login, r);
+        }
+    }
+
+    // Возвращает уже существующего пользователя с тем же логином, если он есть.
+    // После неполной загрузки логины из недочитанных частей неизвестны, поэтому регистрация запрещена
+    public User addUser(User u) throws StorageException {
+        IOException failure = loadFailure;
+        if (failure != null)
+            throw new StorageException("Данные загружены не полностью, регистрация недоступна: " + failure.getMessage());
+
+        User existing;
+        synchronized (logins) {
+            existing = getUser(u.getLogin());
+            if (existing == null) register(u);
+        }
+        if (existing != null) return existing;
+
+        append(() -> journal.appendUser(u));
+        return u;
+    }
+
+    public boolean hasUser(String login) { return logins.contains(login); }
+
+    // Все логины; данные пользователей при этом не загружаются
+    public Set<String> getLogins() { return Collections.unmodifiableSet(logins); }
+    public UserLocks getLocks() { return locks; }
+    public SubTypeDictionary getSubTypes() { return subTypes; }
+    // Последняя ошибка загрузки, снимка или журнала; null, если ошибок не было
+    public IOException getLastFailure() { return lastFailure; }
+
+    private record TransferKey(String from, String id) {}
+
+    private static final class UserRef extends WeakReference<User> {
+        final String login;
+
+        UserRef(User u, ReferenceQueue<User> queue) {
+            super(u, queue);
+            this.login = u.getLogin();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package storage;
+
+// В обоих режимах изменение возвращается вызывающему только после того, как его запись
+// журнала на диске: после сбоя подтверждённые изменения не теряются
+public enum DurabilityMode {
+    // каждая запись журнала сразу сбрасывается на диск (fsync)
+    SYNC,
+    // запись ждёт недолго, пока журнал сбросит одновременный запрос, и только потом сбрасывает его сама:
+    // одновременные записи обходятся одним fsync
+    GROUP_COMMIT
+}
@@ -0,0 +1,41 @@
+package storage;
+
+// Счётчики сброса журнала на диск: сколько раз, сколько записей, сколько времени.
+// Общие на процесс, доступны через Metrics (JMX и сводка)
+public class FlushStats implements FlushStatsMXBean {
+    private long flushes;
+    private long records;
+    private long totalNanos;
+    private long maxNanos;
+    private int maxBatch;
+
+    synchronized void record(int batch, long nanos) {
+        flushes++;
+        records += batch;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        maxBatch = Math.max(maxBatch, batch);
+    }
+
+    @Override public synchronized long getFlushes() { return flushes; }
+    @Override public synchronized long getRecords() { return records; }
+    @Override public synchronized int getMaxBatch() { return maxBatch; }
+
+    @Override
+    public synchronized double getAverageBatch() {
+        return flushes == 0 ? 0 : (double) records / flushes;
+    }
+
+    @Override
+    public synchronized double getAverageMillis() {
+        return flushes == 0 ? 0 : totalNanos / 1e6 / flushes;
+    }
+
+    @Override public synchronized double getMaxMillis() { return maxNanos / 1e6; }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("сбросов: %d, записей: %d, средняя пачка: %.1f, макс. пачка: %d, среднее время: %.3f мс, макс.: %.3f мс",
+                flushes, records, getAverageBatch(), maxBatch, getAverageMillis(), maxNanos / 1e6);
+    }
+}
@@ -0,0 +1,11 @@
+package storage;
+
+// Атрибуты сброса журнала в JMX: finapp:type=JournalFlush
+public interface FlushStatsMXBean {
+    long getFlushes();
+    long getRecords();
+    int getMaxBatch();
+    double getAverageBatch();
+    double getAverageMillis();
+    double getMaxMillis();
+}
@@ -0,0 +1,319 @@
+package storage;
+
+import model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.zip.CRC32;
+
+// Журнал изменений: каждая запись дописывается в конец файла,
+// при загрузке журнал проигрывается поверх последнего снимка.
+// Формат записи: [длина][crc32][seq, тег, поля].
+//
+// Записи сначала копятся в буфере, на диск их переносит DataStore —
+// сразу после каждой записи или общей пачкой одновременных записей, в зависимости от DurabilityMode:
+// пачка забирается из буфера (takePending) и пишется в файл (write) отдельно,
+// чтобы запись на диск не мешала добавлять новые записи.
+public class Journal {
+    // номера 2–4 занимали записи с суммами в double, 7 — лимит по номеру бюджета в списке;
+    // такие записи больше не читаются
+    private static final byte USER = 1;
+    private static final byte OPERATION = 5;
+    private static final byte BUDGET = 6;
+    private static final byte TRANSFER = 8;
+    private static final byte BUDGET_LIMIT = 9;
+    private static final byte PASSWORD = 10;
+    // регулярные правила; проведённые операции и сдвиг даты попадают только в снимок,
+    // проведённые бюджеты пишутся записями BUDGET
+    private static final byte RULE = 11;
+    private static final byte RULE_REMOVED = 12;
+
+    private final File file;
+    // словарь подтипов хранилища: по нему записи получают номера при воспроизведении
+    private final SubTypeDictionary subTypes;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private FileChannel channel;
+    private int pendingRecords;
+    private long lastSeq;
+    private int records;
+
+    // Пользователи, к которым применяются записи при воспроизведении.
+    // Снимки хранилища пишутся частями, поэтому уже учтённая запись определяется
+    // по пользователю: get возвращает null, если записи seq для него уже в снимке.
+    public interface Users {
+        User get(String login, long seq);
+        // новый пользователь; уже известный логин пропускается
+        void add(User u);
+        void addTransfer(Transfer t);
+    }
+
+    public Journal(String path, SubTypeDictionary subTypes) {
+        this.file = new File(path);
+        this.subTypes = subTypes;
+    }
+
+    public long getLastSeq() { return lastSeq; }
+    public int size() { return records; }
+    public int pendingRecords() { return pendingRecords; }
+    // Размер файла журнала в байтах
+    public long length() { return file.length(); }
+
+    // ==========================
+    //           ЗАПИСЬ
+    // ==========================
+    public void appendUser(User u) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream d = header(buf, USER);
+        d.writeUTF(u.getLogin());
+        d.writeUTF(u.getPasswordHash());
+        write(buf);
+    }
+
+    public void appendPassword(User u) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream d = header(buf, PASSWORD);
+        d.writeUTF(u.getLogin());
+        d.writeUTF(u.getPasswordHash());
+        write(buf);
+    }
+
+    public void appendOperation(User u, Operation op) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream d = header(buf, OPERATION);
+        d.writeUTF(u.getLogin());
+        d.writeByte(op.getType().ordinal());
+        d.writeUTF(op.getSubType());
+        d.writeLong(op.getAmountMinor());
+        d.writeUTF(op.getName());
+        d.writeLong(op.getDate().toEpochDay());
+        write(buf);
+    }
+
+    public void appendBudget(User u, BudgetItem b) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream d = header(buf, BUDGET);
+        d.writeUTF(u.getLogin());
+        d.writeByte(b.getType().ordinal());
+        d.writeUTF(b.getSubType());
+        d.writeUTF(b.getMonth().toString());
+        d.writeLong(b.getLimitMinor());
+        write(buf);
+    }
+
+    public void appendBudgetLimit(User u, BudgetItem b) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream d = header(buf, BUDGET_LIMIT);
+        d.writeUTF(u.getLogin());
+        d.writeByte(b.getType().ordinal());
+        d.writeUTF(b.getSubType());
+        d.writeUTF(b.getMonth().toString());
+        d.writeLong(b.getLimitMinor());
+        write(buf);
+    }
+
+    public void appendTransfer(Transfer t) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream d = header(buf, TRANSFER);
+        d.writeUTF(t.getId());
+        d.writeUTF(t.getFrom());
+        d.writeUTF(t.getTo());
+        d.writeLong(t.getAmountMinor());
+        d.writeLong(t.getDate().toEpochDay());
+        write(buf);
+    }
+
+    public void appendRule(User u, RecurringRule r) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream d = header(buf, RULE);
+        d.writeUTF(u.getLogin());
+        d.writeUTF(r.getId());
+        d.writeByte(r.getKind().ordinal());
+        d.writeByte(r.getPeriod().ordinal());
+        d.writeByte(r.getType().ordinal());
+        d.writeUTF(r.getSubType());
+        d.writeLong(r.getAmountMinor());
+        d.writeUTF(r.getName());
+        d.writeByte(r.getAnchorDay());
+        d.writeLong(r.getNextDue().toEpochDay());
+        write(buf);
+    }
+
+    public void appendRuleRemoved(User u, String id) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream d = header(buf, RULE_REMOVED);
+        d.writeUTF(u.getLogin());
+        d.writeUTF(id);
+        write(buf);
+    }
+
+    private DataOutputStream header(ByteArrayOutputStream buf, byte tag) throws IOException {
+        DataOutputStream d = new DataOutputStream(buf);
+        d.writeLong(lastSeq + 1);
+        d.writeByte(tag);
+        return d;
+    }
+
+    private void write(ByteArrayOutputStream buf) throws IOException {
+        byte[] payload = buf.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        DataOutputStream out = new DataOutputStream(pending);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+
+        lastSeq++;
+        records++;
+        pendingRecords++;
+    }
+
+    // Накопленные записи одним куском; lastSeq — номер последней из них
+    public record Batch(byte[] bytes, int records, long lastSeq) {}
+
+    // Забирает накопленные записи из буфера; null, если их нет
+    public Batch takePending() {
+        if (pendingRecords == 0) return null;
+        Batch batch = new Batch(pending.toByteArray(), pendingRecords, lastSeq);
+        pending.reset();
+        pendingRecords = 0;
+        return batch;
+    }
+
+    // Возвращает пачку, которую не удалось записать, в начало буфера
+    public void restore(Batch batch) {
+        byte[] later = pending.toByteArray();
+        pending.reset();
+        pending.writeBytes(batch.bytes());
+        pending.writeBytes(later);
+        pendingRecords += batch.records();
+    }
+
+    // Дописывает пачку в файл; force — дождаться записи на диск.
+    // Пачки пишутся по одной и в том порядке, в каком забраны из буфера
+    public void write(Batch batch, boolean force) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(batch.bytes());
+        while (bytes.hasRemaining()) channel.write(bytes);
+        if (force) channel.force(false);
+    }
+
+    // ==========================
+    //         ВОСПРОИЗВЕДЕНИЕ
+    // ==========================
+    // Применяет к users записи журнала; lastSeq становится не меньше snapshotSeq —
+    // номера последней записи, учтённой в снимке.
+    // Оборванная или повреждённая запись в хвосте завершает чтение.
+    public void replay(Users users, long snapshotSeq) throws IOException {
+        lastSeq = snapshotSeq;
+        records = 0;
+        if (!file.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                try {
+                    int len = in.readInt();
+                    int crc = in.readInt();
+                    if (len <= 0) break;
+                    payload = in.readNBytes(len);
+                    if (payload.length < len || !checksumMatches(payload, crc)) break;
+                } catch (EOFException e) {
+                    break;
+                }
+
+                DataInputStream d = new DataInputStream(new ByteArrayInputStream(payload));
+                long seq = d.readLong();
+                records++;
+
+                apply(users, seq, d.readByte(), d);
+                lastSeq = Math.max(lastSeq, seq);
+            }
+        }
+    }
+
+    private static boolean checksumMatches(byte[] payload, int expected) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == expected;
+    }
+
+    private void apply(Users users, long seq, byte tag, DataInputStream d) throws IOException {
+        if (tag == USER) {
+            users.add(new User(d.readUTF(), d.readUTF(), subTypes));
+            return;
+        }
+
+        // стороны перевода могут лежать в разных частях снимка — каждая проверяется отдельно
+        if (tag == TRANSFER) {
+            Transfer t = new Transfer(d.readUTF(), d.readUTF(), d.readUTF(), d.readLong(),
+                    LocalDate.ofEpochDay(d.readLong()));
+            users.addTransfer(t);
+
+            User from = users.get(t.getFrom(), seq);
+            if (from != null) from.addOperation(t.debit(subTypes));
+            User to = users.get(t.getTo(), seq);
+            if (to != null) to.addOperation(t.credit(subTypes));
+            return;
+        }
+
+        User u = users.get(d.readUTF(), seq);
+        if (u == null) return;
+
+        switch (tag) {
+            case PASSWORD -> u.setPasswordHash(d.readUTF());
+            case OPERATION -> {
+                OperationType type = OperationType.values()[d.readByte()];
+                String subType = d.readUTF();
+                long amount = d.readLong();
+                String name = d.readUTF();
+                LocalDate date = LocalDate.ofEpochDay(d.readLong());
+                u.addOperation(Operation.ofMinor(subTypes, type, subType, amount, name, date));
+            }
+            case BUDGET -> {
+                OperationType type = OperationType.values()[d.readByte()];
+                String subType = d.readUTF();
+                YearMonth month = YearMonth.parse(d.readUTF());
+                long limit = d.readLong();
+                u.addBudget(BudgetItem.ofMinor(subTypes, type, subType, month, limit));
+            }
+            case BUDGET_LIMIT -> {
+                OperationType type = OperationType.values()[d.readByte()];
+                int subTypeId = subTypes.idOf(d.readUTF());
+                YearMonth month = YearMonth.parse(d.readUTF());
+                BudgetItem b = u.getBudgets().find(type, subTypeId, month);
+                if (b != null) b.setLimitMinor(d.readLong());
+            }
+            case RULE -> u.addRule(RecurringRule.of(d.readUTF(),
+                    RecurringRule.Kind.values()[d.readByte()],
+                    RecurringRule.Period.values()[d.readByte()],
+                    OperationType.values()[d.readByte()],
+                    subTypes, subTypes.idOf(d.readUTF()),
+                    d.readLong(), d.readUTF(), d.readByte(), LocalDate.ofEpochDay(d.readLong())));
+            case RULE_REMOVED -> u.removeRule(d.readUTF());
+        }
+    }
+
+    // Вызывается после записи снимка: все записи уже в нём.
+    public void reset() throws IOException {
+        close();
+        new FileOutputStream(file).close();
+        pending.reset();
+        pendingRecords = 0;
+        records = 0;
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
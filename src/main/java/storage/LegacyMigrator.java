@@ -0,0 +1,109 @@
+package storage;
+
+import model.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+// Однократный перенос данных из старого finapp_users.dat (Java-сериализация)
+// в двоичный снимок. Старый файл не удаляется.
+//
+// Классы модели читаются через замороженные копии их прежней структуры,
+// поэтому сами модели можно менять, не ломая перенос.
+public class LegacyMigrator {
+
+    // Подтипы заносятся в словарь subTypes
+    public static boolean migrateIfNeeded(Path legacyFile, Path snapshotFile, SubTypeDictionary subTypes)
+            throws IOException {
+        if (Files.exists(snapshotFile) || !Files.exists(legacyFile)) return false;
+
+        Map<String, User> users = new LinkedHashMap<>();
+        long journalSeq = read(legacyFile, users, subTypes);
+
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        BinarySnapshot.write(tmp, users, List.of(), journalSeq, subTypes);
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    static long read(Path legacyFile, Map<String, User> into, SubTypeDictionary subTypes) throws IOException {
+        try (LegacyInputStream in = new LegacyInputStream(Files.newInputStream(legacyFile))) {
+            Map<String, LegacyUser> legacy = (Map<String, LegacyUser>) in.readObject();
+            for (LegacyUser lu : legacy.values()) into.put(lu.login, lu.toUser(subTypes));
+
+            // номер журнала дописывается после карты, в самых старых файлах его нет
+            try {
+                return in.readLong();
+            } catch (EOFException e) {
+                return 0;
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Не удалось прочитать " + legacyFile, e);
+        }
+    }
+
+    // Подменяет описания классов модели на замороженные копии
+    private static class LegacyInputStream extends ObjectInputStream {
+        private static final Map<String, ObjectStreamClass> LEGACY = Map.of(
+                "model.User", ObjectStreamClass.lookup(LegacyUser.class),
+                "model.Operation", ObjectStreamClass.lookup(LegacyOperation.class),
+                "model.BudgetItem", ObjectStreamClass.lookup(LegacyBudgetItem.class));
+
+        LegacyInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            return LEGACY.getOrDefault(desc.getName(), desc);
+        }
+    }
+
+    // ==========================
+    //    СТРУКТУРА ФАЙЛА v0
+    // ==========================
+    private static class LegacyUser implements Serializable {
+        private static final long serialVersionUID = -4715091114369427017L;
+
+        private String login;
+        private String passwordHash;
+        // поля повторяют старый класс: в файле v0 списки были ArrayList
+        @SuppressWarnings("serial")
+        private List<LegacyOperation> operations;
+        @SuppressWarnings("serial")
+        private List<LegacyBudgetItem> budgets;
+
+        User toUser(SubTypeDictionary subTypes) {
+            User u = new User(login, passwordHash, subTypes);
+            for (LegacyBudgetItem b : budgets) u.addBudget(new BudgetItem(subTypes, b.type, b.subType, b.month, b.limit));
+            for (LegacyOperation o : operations) {
+                u.addOperation(new Operation(subTypes, o.type, o.subType, o.amount, o.name, o.date));
+            }
+            return u;
+        }
+    }
+
+    private static class LegacyOperation implements Serializable {
+        private static final long serialVersionUID = -6893797706887304577L;
+
+        private OperationType type;
+        private String subType;
+        private double amount;
+        private String name;
+        private LocalDate date;
+    }
+
+    private static class LegacyBudgetItem implements Serializable {
+        private static final long serialVersionUID = 5706761244823745455L;
+
+        private OperationType type;
+        private String subType;
+        private YearMonth month;
+        private double limit;
+    }
+}
@@ -0,0 +1,66 @@
+package storage;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Блокировки пользователей с разбиением на полосы: логин отображается на одну
+// из STRIPES блокировок, поэтому разные пользователи почти никогда не мешают друг другу.
+//
+// Любое изменение данных держит общую блокировку снимка на чтение,
+// снимок хранилища берёт её на запись и видит согласованное состояние.
+public class UserLocks {
+    private static final int STRIPES = 64;
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final ReentrantReadWriteLock snapshot = new ReentrantReadWriteLock();
+
+    public UserLocks() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new ReentrantLock();
+    }
+
+    public void lock(String login) {
+        snapshot.readLock().lock();
+        stripes[stripe(login)].lock();
+    }
+
+    public void unlock(String login) {
+        stripes[stripe(login)].unlock();
+        snapshot.readLock().unlock();
+    }
+
+    // Две полосы берутся всегда в порядке возрастания номера — без взаимных блокировок
+    public void lock(String a, String b) {
+        int first = Math.min(stripe(a), stripe(b));
+        int second = Math.max(stripe(a), stripe(b));
+
+        snapshot.readLock().lock();
+        stripes[first].lock();
+        if (second != first) stripes[second].lock();
+    }
+
+    public void unlock(String a, String b) {
+        int first = Math.min(stripe(a), stripe(b));
+        int second = Math.max(stripe(a), stripe(b));
+
+        if (second != first) stripes[second].unlock();
+        stripes[first].unlock();
+        snapshot.readLock().unlock();
+    }
+
+    public void lockAll() {
+        snapshot.writeLock().lock();
+    }
+
+    public void unlockAll() {
+        snapshot.writeLock().unlock();
+    }
+
+    public boolean isHeldByCurrentThread() {
+        return snapshot.getReadHoldCount() > 0 || snapshot.isWriteLockedByCurrentThread();
+    }
+
+    private static int stripe(String login) {
+        int h = login.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -2,26 +2,52 @@ package ui;
 
 import exceptions.AuthException;
 import exceptions.NotFoundException;
+import exceptions.StorageException;
 import exceptions.ValidationException;
 import model.*;
+import service.BudgetAlert;
 import service.FinanceService;
+import service.RecurringScheduler;
+import service.ReportFilter;
 import storage.DataStore;
+import storage.DurabilityMode;
 
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 
-public class ConsoleUI {
+public final class ConsoleUI {
+
+    private static final int PAGE_SIZE = 20;
 
     private final Scanner sc = new Scanner(System.in);
     private final FinanceService service;
     private User current;
 
     public ConsoleUI() {
-        DataStore store = new DataStore();
-        store.load();
+        DataStore store = DataStore.fromProperties(DurabilityMode.SYNC);
+        if (!store.load()) {
+            System.out.println("⚠ Данные загружены не полностью: " + store.getLastFailure().getMessage());
+            System.out.println("  Изменения сохраняются только в журнал, пока файлы не будут исправлены.");
+        }
         this.service = new FinanceService(store);
+        this.service.addAlertListener(this::printAlert);
+
+        int posted = new RecurringScheduler(service).runNow();
+        if (posted > 0) System.out.println("Проведено регулярных записей: " + posted);
+    }
+
+    // Уведомления только по вошедшему пользователю: регулярные записи проводятся для всех
+    private void printAlert(BudgetAlert a) {
+        if (current == null || !current.getLogin().equals(a.getLogin())) return;
+        if (a.getLevel() == BudgetAlert.Level.EXCEEDED) {
+            System.out.println("⚠ Превышен лимит по категории " + a.getSubType() + " за " + a.getMonth() + "!");
+        } else {
+            System.out.println("⚠ Достигнуто 80% лимита по категории " + a.getSubType() + ".");
+        }
     }
 
     public void run() {
@@ -33,18 +59,25 @@ public class ConsoleUI {
     //        АВТОРИЗАЦИЯ
     // ==========================
     private void auth() {
-        System.out.println("=== Вход ===");
-
         while (true) {
+            System.out.println("=== Вход ===");
+            System.out.println("1. Войти");
+            System.out.println("2. Зарегистрироваться");
+
+            int choice = readInt();
+            if (choice != 1 && choice != 2) continue;
+
             String login = InputValidator.readNonEmptyString(sc, "Логин: ");
             String pass = InputValidator.readNonEmptyString(sc, "Пароль: ");
 
             try {
-                current = service.login(login, pass);
+                current = choice == 1 ? service.login(login, pass) : service.register(login, pass);
                 System.out.println("Добро пожаловать, " + current.getLogin());
                 return;
-            } catch (AuthException e) {
+            } catch (AuthException | ValidationException e) {
                 System.out.println("Ошибка: " + e.getMessage());
+            } catch (StorageException e) {
+                System.out.println("⚠ " + e.getMessage());
             }
         }
     }
@@ -59,6 +92,7 @@ public class ConsoleUI {
             System.out.println("2. Бюджет");
             System.out.println("3. Операции");
             System.out.println("4. Выгрузить отчёт");
+            System.out.println("5. Регулярные записи");
             System.out.println("0. Выход");
 
             switch (readInt()) {
@@ -66,7 +100,11 @@ public class ConsoleUI {
                 case 2 -> budgetMenu();
                 case 3 -> operationsMenu();
                 case 4 -> exportReport();
-                case 0 -> { service.save(); return; }
+                case 5 -> recurringMenu();
+                case 0 -> {
+                    if (!service.save()) System.out.println("Ошибка: не удалось сохранить данные");
+                    return;
+                }
             }
         }
     }
@@ -76,7 +114,7 @@ public class ConsoleUI {
     // ==========================
     private void walletMenu() {
         System.out.println("\n=== Кошелёк ===");
-        System.out.println("Баланс: " + current.getBalance());
+        System.out.println("Баланс: " + Money.format(current.getBalanceMinor()));
         System.out.println("1. Перевод");
         System.out.println("0. Назад");
 
@@ -139,41 +177,42 @@ public class ConsoleUI {
         }
     }
 
+    // Факт по всем бюджетам месяца — из одного снимка итогов месяца
     private void viewActuals() {
         YearMonth ym = InputValidator.readYearMonth(sc, "Месяц");
+        MonthlyRollup rollup = service.getMonthlyRollup(current, ym);
+        List<BudgetItem> budgets = service.getBudgets(current, ym);
 
         System.out.println("\n=== Доходы ===");
-        double totalIncome = printActualsForType(OperationType.INCOME, ym);
+        long totalIncome = printActualsForType(budgets, rollup, OperationType.INCOME);
 
         System.out.println("\n=== Расходы ===");
-        double totalExpense = printActualsForType(OperationType.EXPENSE, ym);
+        long totalExpense = printActualsForType(budgets, rollup, OperationType.EXPENSE);
 
         System.out.println("\n=== ИТОГИ ЗА " + ym + " ===");
-        System.out.println("Общий доход:   " + totalIncome);
-        System.out.println("Общий расход:  " + totalExpense);
-        System.out.println("Чистый итог:   " + (totalIncome - totalExpense));
+        System.out.println("Общий доход:   " + Money.format(totalIncome));
+        System.out.println("Общий расход:  " + Money.format(totalExpense));
+        System.out.println("Чистый итог:   " + Money.format(totalIncome - totalExpense));
     }
 
 
-    private double printActualsForType(OperationType type, YearMonth ym) {
-        double totalFact = 0;
+    private long printActualsForType(List<BudgetItem> budgets, MonthlyRollup rollup, OperationType type) {
+        long totalFact = 0;
 
-        for (BudgetItem b : current.getBudgets()) {
-            if (b.getType() == type && b.getMonth().equals(ym)) {
+        for (BudgetItem b : budgets) {
+            if (b.getType() == type) {
 
-                double fact = (type == OperationType.INCOME)
-                        ? service.getIncomeByMonthAndSubType(current, b.getSubType(), ym)
-                        : service.getSpentByMonthAndSubType(current, b.getSubType(), ym);
+                long fact = rollup.getTotalMinor(type, b.getSubTypeId());
 
-                double limit = b.getLimit();
-                double remainder = limit - fact;
+                long limit = b.getLimitMinor();
+                long remainder = limit - fact;
 
                 totalFact += fact;
 
                 System.out.println("\nКатегория: " + b.getSubType());
-                System.out.println("  Лимит:     " + limit);
-                System.out.println("  Факт:      " + fact);
-                System.out.println("  Остаток:   " + remainder);
+                System.out.println("  Лимит:     " + Money.format(limit));
+                System.out.println("  Факт:      " + Money.format(fact));
+                System.out.println("  Остаток:   " + Money.format(remainder));
             }
         }
 
@@ -191,12 +230,29 @@ public class ConsoleUI {
         System.out.println("1. Доход");
         System.out.println("2. Расход");
         System.out.println("3. Просмотр");
+        System.out.println("4. Импорт из CSV");
+        System.out.println("5. Поиск");
         System.out.println("0. Назад");
 
         switch (readInt()) {
             case 1 -> addOperation(OperationType.INCOME);
             case 2 -> addOperation(OperationType.EXPENSE);
             case 3 -> listOperations();
+            case 4 -> importOperations();
+            case 5 -> searchOperations();
+        }
+    }
+
+    private void importOperations() {
+        String path = InputValidator.readNonEmptyString(sc, "Файл CSV (Дата,Тип,Подтип,Сумма,Название): ");
+
+        try {
+            int count = service.importOperations(current, path);
+            System.out.println("Импортировано операций: " + count);
+        } catch (ValidationException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+        } catch (StorageException e) {
+            System.out.println("⚠ " + e.getMessage());
         }
     }
 
@@ -206,7 +262,7 @@ public class ConsoleUI {
         String name = InputValidator.readNonEmptyString(sc, "Название: ");
 
         try {
-            service.addOperation(current, new Operation(type, sub, amount, name, LocalDate.now()));
+            service.addOperation(current, new Operation(current.getSubTypes(), type, sub, amount, name, LocalDate.now()));
             System.out.println("Операция добавлена");
         } catch (ValidationException e) {
             System.out.println("Ошибка: " + e.getMessage());
@@ -214,12 +270,158 @@ public class ConsoleUI {
     }
 
     private void listOperations() {
-        List<Operation> ops = current.getOperations();
-        if (ops.isEmpty()) {
+        LocalDate from = null;
+        LocalDate to = null;
+        if (InputValidator.readYesNo(sc, "Ограничить период?")) {
+            from = InputValidator.readDate(sc, "С даты");
+            to = InputValidator.readDate(sc, "По дату");
+        }
+
+        int total = service.countOperations(current, from, to);
+        if (total == 0) {
             System.out.println("Нет операций");
             return;
         }
-        ops.forEach(o -> System.out.println("  " + o));
+
+        try {
+            for (int offset = 0; offset < total; offset += PAGE_SIZE) {
+                service.getOperations(current, from, to, offset, PAGE_SIZE)
+                        .forEach(o -> System.out.println("  " + o));
+
+                int shown = Math.min(offset + PAGE_SIZE, total);
+                if (shown < total && !InputValidator.readYesNo(sc, "Показано " + shown + " из " + total + ". Дальше?"))
+                    return;
+            }
+        } catch (ValidationException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+        }
+    }
+
+    // Слова ищутся по началу слов названия и подтипа: "такс" найдёт "Такси до дома"
+    private void searchOperations() {
+        System.out.print("Слова (Enter — без отбора по словам): ");
+        String text = sc.nextLine();
+
+        LocalDate from = null;
+        LocalDate to = null;
+        if (InputValidator.readYesNo(sc, "Ограничить период?")) {
+            from = InputValidator.readDate(sc, "С даты");
+            to = InputValidator.readDate(sc, "По дату");
+        }
+        Long min = null;
+        Long max = null;
+        if (InputValidator.readYesNo(sc, "Ограничить сумму?")) {
+            min = Money.toMinor(InputValidator.readPositiveDouble(sc, "От: "));
+            max = Money.toMinor(InputValidator.readPositiveDouble(sc, "До: "));
+        }
+        Set<OperationType> types = InputValidator.readYesNo(sc, "Только один тип?")
+                ? EnumSet.of(InputValidator.readOperationType(sc, "Тип"))
+                : EnumSet.allOf(OperationType.class);
+        OperationQuery query = new OperationQuery(text, from, to, min, max, types);
+
+        try {
+            for (int offset = 0; ; offset += PAGE_SIZE) {
+                OperationPage page = service.searchOperations(current, query, offset, PAGE_SIZE);
+                if (page.total() == 0) {
+                    System.out.println("Ничего не найдено");
+                    return;
+                }
+                page.items().forEach(o -> System.out.println("  " + o));
+
+                int shown = offset + page.items().size();
+                if (shown >= page.total()
+                        || !InputValidator.readYesNo(sc, "Показано " + shown + " из " + page.total() + ". Дальше?"))
+                    return;
+            }
+        } catch (ValidationException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+        }
+    }
+
+    // ==========================
+    //     РЕГУЛЯРНЫЕ ЗАПИСИ
+    // ==========================
+    private void recurringMenu() {
+        System.out.println("\n=== Регулярные записи ===");
+        System.out.println("1. Добавить операцию");
+        System.out.println("2. Добавить бюджет на каждый месяц");
+        System.out.println("3. Просмотр");
+        System.out.println("4. Удалить");
+        System.out.println("0. Назад");
+
+        switch (readInt()) {
+            case 1 -> addRecurringOperation();
+            case 2 -> addRecurringBudget();
+            case 3 -> listRecurring();
+            case 4 -> removeRecurring();
+        }
+    }
+
+    private void addRecurringOperation() {
+        OperationType type = InputValidator.readOperationType(sc, "Тип");
+        String sub = InputValidator.readNonEmptyString(sc, "Подтип: ");
+        double amount = InputValidator.readPositiveDouble(sc, "Сумма: ");
+        String name = InputValidator.readNonEmptyString(sc, "Название: ");
+        RecurringRule.Period period = InputValidator.readYesNo(sc, "Каждую неделю (иначе каждый месяц)?")
+                ? RecurringRule.Period.WEEKLY
+                : RecurringRule.Period.MONTHLY;
+        LocalDate start = InputValidator.readDate(sc, "Первая дата");
+
+        try {
+            service.addRecurringOperation(current, type, sub, amount, name, period, start);
+            System.out.println("Регулярная операция добавлена");
+            postDueRecurring();
+        } catch (ValidationException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+        }
+    }
+
+    private void addRecurringBudget() {
+        OperationType type = InputValidator.readOperationType(sc, "Тип");
+        String sub = InputValidator.readNonEmptyString(sc, "Подтип: ");
+        double limit = InputValidator.readPositiveDouble(sc, "Лимит: ");
+        YearMonth first = InputValidator.readYearMonth(sc, "Первый месяц");
+
+        try {
+            service.addRecurringBudget(current, type, sub, limit, first);
+            System.out.println("Регулярный бюджет добавлен");
+            postDueRecurring();
+        } catch (ValidationException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+        }
+    }
+
+    // Повторения, которые уже наступили, проводятся сразу
+    private void postDueRecurring() {
+        int posted = service.postDueRecurring(current, LocalDate.now());
+        if (posted > 0) System.out.println("Проведено повторений: " + posted);
+    }
+
+    // Возвращает показанный список: удаление выбирает запись по номеру в нём
+    private List<RecurringRule> listRecurring() {
+        List<RecurringRule> rules = service.getRecurringRules(current);
+        if (rules.isEmpty()) System.out.println("Нет регулярных записей");
+        for (int i = 0; i < rules.size(); i++) System.out.println((i + 1) + ". " + rules.get(i));
+        return rules;
+    }
+
+    private void removeRecurring() {
+        List<RecurringRule> rules = listRecurring();
+        if (rules.isEmpty()) return;
+
+        System.out.print("Номер записи: ");
+        int n = readInt();
+        if (n < 1 || n > rules.size()) {
+            System.out.println("Ошибка: нет записи с таким номером");
+            return;
+        }
+
+        try {
+            service.removeRecurringRule(current, rules.get(n - 1).getId());
+            System.out.println("Регулярная запись удалена");
+        } catch (NotFoundException e) {
+            System.out.println("Ошибка: " + e.getMessage());
+        }
     }
 
     // ==========================
@@ -228,8 +430,18 @@ public class ConsoleUI {
     private void exportReport() {
         String path = InputValidator.readNonEmptyString(sc, "Введите название в формате NAME.csv: ");
 
+        ReportFilter filter = ReportFilter.all();
+        if (InputValidator.readYesNo(sc, "Ограничить период или тип операций?")) {
+            LocalDate from = InputValidator.readDate(sc, "С даты");
+            LocalDate to = InputValidator.readDate(sc, "По дату");
+            Set<OperationType> types = InputValidator.readYesNo(sc, "Только один тип?")
+                    ? EnumSet.of(InputValidator.readOperationType(sc, "Тип"))
+                    : EnumSet.allOf(OperationType.class);
+            filter = new ReportFilter(from, to, types);
+        }
+
         try {
-            service.exportFullReport(current, path);
+            service.exportFullReport(current, path, filter);
             System.out.println("Отчёт выгружен в папку проекта");
         } catch (ValidationException e) {
             System.out.println("Ошибка: " + e.getMessage());
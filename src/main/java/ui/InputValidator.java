@@ -2,6 +2,7 @@ package ui;
 
 import model.OperationType;
 
+import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.Scanner;
 
@@ -45,6 +46,18 @@ public class InputValidator {
         }
     }
 
+    public static LocalDate readDate(Scanner sc, String message) {
+        while (true) {
+            System.out.print(message + " (формат YYYY-MM-DD): ");
+            String input = sc.nextLine().trim();
+            try {
+                return LocalDate.parse(input);
+            } catch (Exception e) {
+                System.out.println("Неверный формат. Пример: 2024-12-31");
+            }
+        }
+    }
+
     public static OperationType readOperationType(Scanner sc, String message) {
         while (true) {
             System.out.print(message + " (INCOME или EXPENSE): ");